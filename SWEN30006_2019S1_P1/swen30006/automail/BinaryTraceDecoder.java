@@ -0,0 +1,159 @@
+package automail;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Properties;
+
+/**
+ * Streams a trace written by BinaryTraceWriter back out, either as the text log the simulation
+ * prints at full trace, or as a table of the latency of every delivered item.
+ *
+ * Usage: BinaryTraceDecoder traceFile [text|latency]
+ */
+public class BinaryTraceDecoder {
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final Configuration configuration;
+	private final Integer seed;
+	/** The mail items seen so far, indexed by id */
+	private final ArrayList<MailItem> mail = new ArrayList<MailItem>();
+
+	public BinaryTraceDecoder(String fileName) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryTraceWriter.HEADER_SIZE);
+		if (header.getInt() != BinaryTraceWriter.MAGIC || header.getInt() != BinaryTraceWriter.VERSION
+				|| header.getInt() != BinaryTraceWriter.RECORD_SIZE) {
+			file.close();
+			throw new IOException(fileName + " is not an automail binary trace");
+		}
+		Properties properties = Configuration.defaultProperties();
+		properties.setProperty("Floors", String.valueOf(header.getInt()));
+		properties.setProperty("Fragile", String.valueOf(header.getInt() == 1));
+		properties.setProperty("Mail_to_Create", String.valueOf(header.getInt()));
+		properties.setProperty("Mail_Max_Weight", String.valueOf(header.getInt()));
+		properties.setProperty("Last_Delivery_Time", String.valueOf(header.getInt()));
+		properties.setProperty("Robots", String.valueOf(header.getInt()));
+		boolean seeded = header.getInt() == 1;
+		int seedValue = header.getInt();
+		seed = seeded ? seedValue : null;
+		configuration = new Configuration(properties);
+	}
+
+	/** Receives the records of a trace in order */
+	private interface Visitor {
+		void record(int tick, byte type, int b5, int b6, int b7, int robot, int mail, int floor, int value);
+	}
+
+	/**
+	 * Reads every record in turn, mapping a chunk of the file at a time
+	 */
+	private void read(Visitor visitor) throws IOException {
+		long size = channel.size();
+		for (long start = BinaryTraceWriter.HEADER_SIZE; start < size; start += BinaryTraceWriter.CHUNK) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(BinaryTraceWriter.CHUNK, size - start));
+			while (buffer.remaining() >= BinaryTraceWriter.RECORD_SIZE) {
+				visitor.record(buffer.getInt(), buffer.get(), buffer.get(), buffer.get(), buffer.get(),
+						buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+			}
+		}
+	}
+
+	/**
+	 * Writes the trace out as the text log the simulation prints at full trace
+	 * @param out where to write the log
+	 */
+	public void decodeText(PrintStream out) throws IOException {
+		final ITraceSink trace = new PrintStreamTraceSink(TraceLevel.FULL, out);
+		final Robot.RobotState[] states = Robot.RobotState.values();
+		final double[] score = new double[1];
+		Simulation.printSettings(trace, configuration, seed);
+		read(new Visitor() {
+			@Override
+			public void record(int tick, byte type, int b5, int b6, int b7, int robot, int id, int floor, int value) {
+				switch (type) {
+				case BinaryTraceWriter.ARRIVAL:
+					trace.trace(TraceLevel.FULL, MailGenerator.ARRIVAL_FORMAT, tick, arrived(id, tick, floor, value, b5));
+					break;
+				case BinaryTraceWriter.RETURN:
+					trace.trace(TraceLevel.FULL, Robot.RETURN_FORMAT, tick, mail.get(id));
+					break;
+				case BinaryTraceWriter.STATE_CHANGE:
+					trace.trace(TraceLevel.FULL, Robot.STATE_CHANGE_FORMAT, tick, Robot.idTube(robot, b7), states[b5], states[b6]);
+					break;
+				case BinaryTraceWriter.DISPATCH:
+					trace.trace(TraceLevel.FULL, Robot.DISPATCH_FORMAT, tick, Robot.idTube(robot, b7), mail.get(id));
+					break;
+				case BinaryTraceWriter.DELIVERY:
+					trace.trace(TraceLevel.FULL, Simulation.DELIVERED_FORMAT, tick, value, mail.get(id));
+					score[0] += Simulation.deliveryScore(tick, mail.get(id));
+					break;
+				case BinaryTraceWriter.END:
+					Simulation.printResults(trace, tick, score[0]);
+					break;
+				}
+			}
+		});
+		trace.close();
+	}
+
+	/**
+	 * Writes a table of when each item arrived and was delivered, in order of delivery
+	 * @param out where to write the table
+	 */
+	public void decodeLatency(final PrintStream out) throws IOException {
+		out.println("Mail,Arrival,Delivered,Latency,Destination,Weight,Priority");
+		read(new Visitor() {
+			@Override
+			public void record(int tick, byte type, int b5, int b6, int b7, int robot, int id, int floor, int value) {
+				if (type == BinaryTraceWriter.ARRIVAL) {
+					arrived(id, tick, floor, value, b5);
+				} else if (type == BinaryTraceWriter.DELIVERY) {
+					MailItem mailItem = mail.get(id);
+					int priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+					out.printf("%d,%d,%d,%d,%d,%d,%d%n", id, mailItem.getArrivalTime(), tick, tick - mailItem.getArrivalTime(),
+							mailItem.getDestFloor(), mailItem.getWeight(), priority);
+				}
+			}
+		});
+		out.flush();
+	}
+
+	/**
+	 * Rebuilds an arriving item from its record
+	 * @return the item
+	 */
+	private MailItem arrived(int id, int arrival, int floor, int weight, int priority) {
+		MailItem mailItem = (priority == 0) ? new MailItem(id, floor, arrival, weight)
+				: new PriorityMailItem(id, floor, arrival, weight, priority);
+		while (mail.size() <= id) mail.add(null);
+		mail.set(id, mailItem);
+		return mailItem;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: BinaryTraceDecoder traceFile [text|latency]");
+			return;
+		}
+		BinaryTraceDecoder decoder = new BinaryTraceDecoder(args[0]);
+		try {
+			if (args.length > 1 && args[1].equals("latency")) {
+				decoder.decodeLatency(System.out);
+			} else {
+				decoder.decodeText(System.out);
+			}
+		} finally {
+			decoder.close();
+		}
+	}
+}
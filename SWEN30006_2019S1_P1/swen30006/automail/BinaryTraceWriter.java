@@ -0,0 +1,139 @@
+package automail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the events of a run as fixed size binary records through a memory-mapped file.
+ * The file starts with a header of HEADER_SIZE bytes holding the settings of the run, followed by
+ * one RECORD_SIZE record per event:
+ *
+ *   0  int  tick
+ *   4  byte event type
+ *   5  byte priority of an arriving item, or the state a robot changed from
+ *   6  byte the state a robot changed to
+ *   7  byte the number of items in the robot's tube
+ *   8  int  robot id, or -1
+ *  12  int  mail id, or -1
+ *  16  int  floor, the destination of the mail item
+ *  20  int  weight of an arriving item, or the number of items delivered so far
+ *
+ * BinaryTraceDecoder reads the file back.
+ */
+public class BinaryTraceWriter {
+
+	public static final int MAGIC = 0x414D5452; // "AMTR"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int RECORD_SIZE = 24;
+
+	/** The event types */
+	public static final byte ARRIVAL = 0;
+	public static final byte RETURN = 1;
+	public static final byte STATE_CHANGE = 2;
+	public static final byte DISPATCH = 3;
+	public static final byte DELIVERY = 4;
+	public static final byte END = 5;
+
+	/** How much of the file is mapped at a time, a whole number of records */
+	static final int CHUNK = RECORD_SIZE * (1 << 18);
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	/** Where in the file the current mapping starts */
+	private long mapped;
+
+	/**
+	 * Creates the file and writes its header
+	 * @param fileName the file to write, which is overwritten
+	 * @param configuration the settings of the run
+	 * @param seed the seed of the run, or null if it was randomised
+	 */
+	public BinaryTraceWriter(String fileName, Configuration configuration, Integer seed) throws IOException {
+		file = new RandomAccessFile(fileName, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		mapped = 0;
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + CHUNK);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(RECORD_SIZE);
+		buffer.putInt(configuration.floors);
+		buffer.putInt(configuration.fragile ? 1 : 0);
+		buffer.putInt(configuration.mailToCreate);
+		buffer.putInt(configuration.mailMaxWeight);
+		buffer.putInt(configuration.lastDeliveryTime);
+		buffer.putInt(configuration.robots);
+		buffer.putInt(seed == null ? 0 : 1);
+		buffer.putInt(seed == null ? 0 : seed);
+		buffer.position(HEADER_SIZE);
+	}
+
+	private void record(int tick, byte type, int b5, int b6, int b7, int robot, int mail, int floor, int value) {
+		if (buffer.remaining() < RECORD_SIZE) {
+			mapped += buffer.position();
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, mapped, CHUNK);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to extend the binary trace", e);
+			}
+		}
+		buffer.putInt(tick);
+		buffer.put(type);
+		buffer.put((byte) b5);
+		buffer.put((byte) b6);
+		buffer.put((byte) b7);
+		buffer.putInt(robot);
+		buffer.putInt(mail);
+		buffer.putInt(floor);
+		buffer.putInt(value);
+	}
+
+	private static int priority(MailItem mailItem) {
+		return (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+	}
+
+	/** A new item has arrived and been added to the pool */
+	public void arrival(int time, MailItem mailItem) {
+		record(time, ARRIVAL, priority(mailItem), 0, 0, -1, mailItem.getId(), mailItem.getDestFloor(), mailItem.getWeight());
+	}
+
+	/** A robot has brought an undelivered item back to the pool */
+	public void returned(int time, int robot, MailItem mailItem) {
+		record(time, RETURN, 0, 0, 0, robot, mailItem.getId(), mailItem.getDestFloor(), 0);
+	}
+
+	/** A robot has changed state */
+	public void stateChange(int time, int robot, int tube, Robot.RobotState from, Robot.RobotState to) {
+		record(time, STATE_CHANGE, from.ordinal(), to.ordinal(), tube, robot, -1, 0, 0);
+	}
+
+	/** A robot has set off to deliver an item */
+	public void dispatch(int time, int robot, int tube, MailItem mailItem) {
+		record(time, DISPATCH, 0, 0, tube, robot, mailItem.getId(), mailItem.getDestFloor(), 0);
+	}
+
+	/** An item has been delivered */
+	public void delivered(int time, int count, MailItem mailItem) {
+		record(time, DELIVERY, 0, 0, 0, -1, mailItem.getId(), mailItem.getDestFloor(), count);
+	}
+
+	/** The run has finished */
+	public void end(int time) {
+		record(time, END, 0, 0, 0, -1, -1, 0, 0);
+	}
+
+	/**
+	 * Flushes the records and cuts the file down to the records written
+	 */
+	public void close() throws IOException {
+		long length = mapped + buffer.position();
+		buffer.force();
+		buffer = null;
+		channel.truncate(length);
+		file.close();
+	}
+}
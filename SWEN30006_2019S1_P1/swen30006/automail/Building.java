@@ -4,7 +4,7 @@ public class Building {
 	
 	
     /** The number of floors in the building **/
-    public static int FLOORS;
+    public final int FLOORS;
     
     /** Represents the ground floor location */
     public static final int LOWEST_FLOOR = 1;
@@ -12,4 +12,8 @@ public class Building {
     /** Represents the mailroom location */
     public static final int MAILROOM_LOCATION = 1;
 
+    public Building(int floors) {
+    	FLOORS = floors;
+    }
+
 }
@@ -0,0 +1,222 @@
+package automail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Finds the smallest fleet of Standard robots which meets a target for a building, and with which
+ * tube if several are given. Every run of a fleet is measured, either by the p95 delivery delay of
+ * the run or by its final score, and a fleet meets the target when the upper end of the 95%
+ * confidence interval of the mean over its seeds is no more than the target.
+ *
+ * A fleet is run on a batch of seeds at a time, in parallel, and stops early once the interval
+ * lies wholly on one side of the target. The fleet size doubles until a fleet meets the target,
+ * then is bisected down to the smallest which does, assuming that more robots never do worse.
+ * Settings other than Floors, Mail_to_Create, Robots and Tube_Capacity come from automail.properties.
+ *
+ * Usage: CapacityPlanner floors mail delay|score target [maxSeeds] [threads] [tubes]
+ * where tubes is a list of tube capacities such as 1,2,3
+ */
+public class CapacityPlanner {
+
+	/** The seeds every fleet runs before it may stop early */
+	private static final int MIN_SEEDS = 5;
+	/** The largest fleet tried */
+	private static final int MAX_ROBOTS = 4096;
+
+	/** What is measured of each run */
+	public enum Metric { DELAY, SCORE }
+
+	/** How a fleet did against the target */
+	public static class Evaluation {
+		public final int robots;
+		public final int tubeCapacity;
+		/** The measure of each completed run */
+		public final Summary runs;
+		/** The confidence interval of the mean */
+		public final double low;
+		public final double high;
+		/** Why a run could not complete, or null if they all did */
+		public final Throwable failure;
+		public final boolean meets;
+
+		Evaluation(int robots, int tubeCapacity, Summary runs, double low, double high, Throwable failure, double target) {
+			this.robots = robots;
+			this.tubeCapacity = tubeCapacity;
+			this.runs = runs;
+			this.low = low;
+			this.high = high;
+			this.failure = failure;
+			this.meets = failure == null && high <= target;
+		}
+	}
+
+	private final Properties properties;
+	private final Metric metric;
+	private final double target;
+	private final int maxSeeds;
+	private final int threads;
+	private final ForkJoinPool pool;
+	private final HashMap<Long, Evaluation> evaluated = new HashMap<Long, Evaluation>();
+
+	/**
+	 * @param properties the settings of the building, which Robots and Tube_Capacity are varied from
+	 * @param metric what is measured of each run
+	 * @param target the most the mean measure may be
+	 * @param maxSeeds the most seeds a fleet is run on
+	 * @param threads how many runs may go at once
+	 */
+	public CapacityPlanner(Properties properties, Metric metric, double target, int maxSeeds, int threads) {
+		this.properties = properties;
+		this.metric = metric;
+		this.target = target;
+		this.maxSeeds = Math.max(maxSeeds, MIN_SEEDS);
+		this.threads = threads;
+		this.pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * @return the fewest robots which can carry every item the building may receive
+	 */
+	private int minRobots() {
+		int mailMaxWeight = Integer.parseInt(properties.getProperty("Mail_Max_Weight"));
+		if (mailMaxWeight > Robot.PAIR_MAX_WEIGHT) return 3;
+		return mailMaxWeight > Robot.INDIVIDUAL_MAX_WEIGHT ? 2 : 1;
+	}
+
+	/**
+	 * Runs a fleet on seeds from 1 until the target is clearly met or missed, or the seeds run out
+	 */
+	public Evaluation evaluate(int robots, int tubeCapacity) throws InterruptedException {
+		long key = ((long) robots << 32) | tubeCapacity;
+		Evaluation evaluation = evaluated.get(key);
+		if (evaluation != null) return evaluation;
+
+		Properties fleetProperties = new Properties();
+		fleetProperties.putAll(properties);
+		fleetProperties.setProperty("Robots", String.valueOf(robots));
+		fleetProperties.setProperty("Tube_Capacity", String.valueOf(tubeCapacity));
+		Configuration configuration = new Configuration(fleetProperties);
+
+		double[] values = new double[maxSeeds];
+		int count = 0;
+		Throwable failure = null;
+		double low = 0;
+		double high = Double.MAX_VALUE;
+		while (count < maxSeeds && failure == null) {
+			int batch = Math.min(Math.max(threads, MIN_SEEDS - count), maxSeeds - count);
+			int firstSeed = count + 1;
+			for (Sweep.Result result : Sweep.collect(Sweep.submit(pool, configuration, firstSeed, firstSeed + batch - 1), firstSeed)) {
+				if (result.failure != null) {
+					failure = result.failure;
+					break;
+				}
+				values[count++] = (metric == Metric.DELAY) ? result.delays.percentile(95) : result.score;
+			}
+			if (count < MIN_SEEDS) continue;
+			Summary summary = new Summary(Arrays.copyOf(values, count));
+			double margin = tQuantile(count - 1) * summary.stddev() / Math.sqrt(count);
+			low = summary.mean() - margin;
+			high = summary.mean() + margin;
+			if (high <= target || low > target) break;
+		}
+		evaluation = new Evaluation(robots, tubeCapacity, new Summary(Arrays.copyOf(values, count)), low, high, failure, target);
+		evaluated.put(key, evaluation);
+		print(evaluation);
+		return evaluation;
+	}
+
+	/**
+	 * @return the smallest fleet with the given tube which meets the target, or null if none up to MAX_ROBOTS does
+	 */
+	public Evaluation search(int tubeCapacity) throws InterruptedException {
+		int below = minRobots() - 1;
+		int robots = below + 1;
+		Evaluation evaluation;
+		while (!(evaluation = evaluate(robots, tubeCapacity)).meets) {
+			if (robots >= MAX_ROBOTS) return null;
+			below = robots;
+			robots = Math.min(robots * 2, MAX_ROBOTS);
+		}
+		while (robots - below > 1) {
+			int middle = (below + robots) >>> 1;
+			Evaluation tried = evaluate(middle, tubeCapacity);
+			if (tried.meets) {
+				robots = middle;
+				evaluation = tried;
+			} else {
+				below = middle;
+			}
+		}
+		return evaluation;
+	}
+
+	/**
+	 * Stops the runners
+	 */
+	public void close() {
+		pool.shutdown();
+	}
+
+	private String measure() {
+		return (metric == Metric.DELAY) ? "p95 delay" : "final score";
+	}
+
+	private void print(Evaluation evaluation) {
+		if (evaluation.failure != null) {
+			System.out.printf("Robots %4d, tube %d: unable to complete: %s%n", evaluation.robots, evaluation.tubeCapacity, evaluation.failure);
+			return;
+		}
+		System.out.printf("Robots %4d, tube %d: %s %.2f, 95%% CI %.2f to %.2f over %d seeds: %s%n",
+				evaluation.robots, evaluation.tubeCapacity, measure(), evaluation.runs.mean(), evaluation.low, evaluation.high,
+				evaluation.runs.count(), evaluation.meets ? "meets" : "misses");
+	}
+
+	/**
+	 * @param df degrees of freedom, at least 1
+	 * @return the two-sided 95% quantile of Student's t distribution, from the Cornish-Fisher expansion
+	 */
+	static double tQuantile(int df) {
+		final double z = 1.959964;
+		double z3 = z * z * z;
+		double z5 = z3 * z * z;
+		return z + (z3 + z) / (4 * df) + (5 * z5 + 16 * z3 + 3 * z) / (96.0 * df * df);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 4) {
+			System.out.println("Usage: CapacityPlanner floors mail delay|score target [maxSeeds] [threads] [tubes]");
+			return;
+		}
+		Properties properties = Configuration.loadProperties("automail.properties");
+		properties.setProperty("Floors", args[0]);
+		properties.setProperty("Mail_to_Create", args[1]);
+		Metric metric = Metric.valueOf(args[2].toUpperCase());
+		double target = Double.parseDouble(args[3]);
+		int maxSeeds = (args.length > 4) ? Integer.parseInt(args[4]) : 30;
+		int threads = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		String[] tubes = (args.length > 6) ? args[6].split(",") : new String[] { properties.getProperty("Tube_Capacity") };
+
+		CapacityPlanner planner = new CapacityPlanner(properties, metric, target, maxSeeds, threads);
+		System.out.printf("Floors: %s; Mail: %s; Target: %s <= %s; Seeds: up to %d on %d threads%n",
+				args[0], args[1], planner.measure(), args[3], planner.maxSeeds, threads);
+		Evaluation best = null;
+		try {
+			for (String tube : tubes) {
+				Evaluation found = planner.search(Integer.parseInt(tube.trim()));
+				if (found != null && (best == null || found.robots < best.robots)) best = found;
+			}
+		} finally {
+			planner.close();
+		}
+		if (best == null) {
+			System.out.printf("No fleet of up to %d robots meets the target%n", MAX_ROBOTS);
+		} else {
+			System.out.printf("Smallest: %d robots with tube %d; %s %.2f, 95%% CI %.2f to %.2f over %d seeds%n",
+					best.robots, best.tubeCapacity, planner.measure(), best.runs.mean(), best.low, best.high, best.runs.count());
+		}
+	}
+}
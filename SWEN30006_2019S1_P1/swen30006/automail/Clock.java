@@ -3,16 +3,28 @@ package automail;
 public class Clock {
 	
 	/** Represents the current time **/
-    private static int Time = 0;
+    private int Time = 0;
     
     /** The threshold for the latest time for mail to arrive **/
-    public static int LAST_DELIVERY_TIME;
+    public final int LAST_DELIVERY_TIME;
 
-    public static int Time() {
+    public Clock(int lastDeliveryTime) {
+    	LAST_DELIVERY_TIME = lastDeliveryTime;
+    }
+
+    public int Time() {
     	return Time;
     }
     
-    public static void Tick() {
+    public void Tick() {
     	Time++;
     }
+    
+    /**
+     * Advances the time by several ticks at once
+     * @param ticks the number of ticks to advance
+     */
+    public void Tick(int ticks) {
+    	Time += ticks;
+    }
 }
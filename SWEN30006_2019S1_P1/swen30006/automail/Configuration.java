@@ -0,0 +1,139 @@
+package automail;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * The settings for a simulation run, as read from automail.properties
+ */
+public class Configuration {
+
+	public final int floors;
+	public final boolean fragile;
+	public final int mailToCreate;
+	public final int mailMaxWeight;
+	public final int lastDeliveryTime;
+	public final int robots;
+	/** The type of each robot, in the order they are created */
+	public final RobotType[] robotTypes;
+	/** The class name of the pool strategy which loads the robots */
+	public final String mailPool;
+	/** Whether robots wait for a heavy item only when its group will be ready soon, and groups are never disbanded */
+	public final boolean reserveGroups;
+	/** How many items fit in each robot's tube */
+	public final int tubeCapacity;
+	/** Whether robots may deliver a trip in one sweep up the building rather than hand first */
+	public final boolean sweepRouting;
+	/** The seed given in the properties, or null if there is none */
+	public final Integer seed;
+	/** Whether to jump between the ticks where something happens rather than step every tick */
+	public final boolean eventDriven;
+	/** Whether to keep the robots' state in arrays rather than in a Robot each */
+	public final boolean arrayFleet;
+	/** How many threads step the robots within a tick */
+	public final int robotThreads;
+	/** Whether to generate each tick's mail as it arrives rather than all of it up front */
+	public final boolean streamingMail;
+	/** The workload file to replay instead of generating the mail, or null */
+	public final String workloadFile;
+	/** How much of each run to report */
+	public final TraceLevel traceLevel;
+	/** The file to write the trace to in the background, or null to print it */
+	public final String traceFile;
+	/** The file to record the events in binary, or null */
+	public final String binaryTraceFile;
+	/** The file to export the run's metrics to, or null */
+	public final String metricsFile;
+	/** The file to write a row of metrics to every metricsInterval ticks, or null */
+	public final String metricsSampleFile;
+	public final int metricsInterval;
+
+	public Configuration(Properties automailProperties) {
+		String seedProp = automailProperties.getProperty("Seed");
+		seed = (seedProp == null) ? null : Integer.valueOf(seedProp);
+		floors = Integer.parseInt(automailProperties.getProperty("Floors"));
+		fragile = Boolean.parseBoolean(automailProperties.getProperty("Fragile"));
+		mailToCreate = Integer.parseInt(automailProperties.getProperty("Mail_to_Create"));
+		mailMaxWeight = Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight"));
+		lastDeliveryTime = Integer.parseInt(automailProperties.getProperty("Last_Delivery_Time"));
+		// MailPool - the strategy which decides what each robot carries, see MailPoolRegistry
+		mailPool = automailProperties.getProperty("MailPool");
+		// Group_Carry - "queue" has every robot wait for a heavy item, "reserve" asks a GroupCarryPlanner;
+		// LookaheadMailPool makes its own groups and ignores it
+		reserveGroups = automailProperties.getProperty("Group_Carry").equals("reserve");
+		// Tube_Capacity - how many items a robot carries besides the one in its hand
+		tubeCapacity = Integer.parseInt(automailProperties.getProperty("Tube_Capacity"));
+		// Robots - a number of Standard robots, or a list of robot types, see RobotType
+		robotTypes = RobotType.fleet(automailProperties.getProperty("Robots"), automailProperties, tubeCapacity);
+		robots = robotTypes.length;
+		// Routing - "hand" delivers the item in hand first, "sweep" may deliver the trip in floor order
+		sweepRouting = automailProperties.getProperty("Routing").equals("sweep");
+		// Engine - "tick" steps every tick, "event" jumps between the ticks where something happens
+		eventDriven = automailProperties.getProperty("Engine").equals("event");
+		// Fleet - "objects" steps each Robot in turn, "arrays" steps the whole fleet in a RobotFleet
+		arrayFleet = automailProperties.getProperty("Fleet").equals("arrays");
+		// Robot_Threads - step the robots on this many threads, with the same result as one
+		robotThreads = Integer.parseInt(automailProperties.getProperty("Robot_Threads"));
+		// Mail_Generation - "pregenerate" reproduces the workload of a seed, "stream" generates it tick by tick
+		streamingMail = automailProperties.getProperty("Mail_Generation").equals("stream");
+		// Workload_File - replay the mail recorded by WorkloadWriter rather than generating it
+		workloadFile = automailProperties.getProperty("Workload_File");
+		// Trace - off, summary or full; Trace_File - write it to a file rather than the console
+		traceLevel = TraceLevel.valueOf(automailProperties.getProperty("Trace").toUpperCase());
+		traceFile = automailProperties.getProperty("Trace_File");
+		// Binary_Trace - also record every event in a binary file, see BinaryTraceWriter
+		binaryTraceFile = automailProperties.getProperty("Binary_Trace");
+		// Metrics_File - export delays, pool depth and robot time as JSON (.json) or CSV, see DeliveryMetrics
+		metricsFile = automailProperties.getProperty("Metrics_File");
+		// Metrics_Sample_File - write the metrics so far as CSV every Metrics_Interval ticks
+		metricsSampleFile = automailProperties.getProperty("Metrics_Sample_File");
+		metricsInterval = Integer.parseInt(automailProperties.getProperty("Metrics_Interval"));
+	}
+
+	/**
+	 * @return the properties used for anything not set in automail.properties
+	 */
+	public static Properties defaultProperties() {
+		Properties automailProperties = new Properties();
+		// Default properties
+		// automailProperties.setProperty("Robots", "Big,Standard*2,Weak");
+		automailProperties.setProperty("Robots", "Standard");
+		automailProperties.setProperty("MailPool", "strategies.IndexedMailPool");
+		automailProperties.setProperty("Floors", "10");
+		automailProperties.setProperty("Fragile", "false");
+		automailProperties.setProperty("Mail_to_Create", "80");
+		automailProperties.setProperty("Last_Delivery_Time", "100");
+		automailProperties.setProperty("Tube_Capacity", "1");
+		automailProperties.setProperty("Routing", "hand");
+		automailProperties.setProperty("Group_Carry", "queue");
+		automailProperties.setProperty("Engine", "tick");
+		automailProperties.setProperty("Fleet", "objects");
+		automailProperties.setProperty("Robot_Threads", "1");
+		automailProperties.setProperty("Mail_Generation", "pregenerate");
+		automailProperties.setProperty("Trace", "full");
+		automailProperties.setProperty("Metrics_Interval", "100");
+		return automailProperties;
+	}
+
+	/**
+	 * Reads a properties file on top of the default properties
+	 * @param fileName the properties file to read
+	 * @return the properties
+	 */
+	public static Properties loadProperties(String fileName) throws IOException {
+		Properties automailProperties = defaultProperties();
+
+		// Read properties
+		FileReader inStream = null;
+		try {
+			inStream = new FileReader(fileName);
+			automailProperties.load(inStream);
+		} finally {
+			if (inStream != null) {
+				inStream.close();
+			}
+		}
+		return automailProperties;
+	}
+}
@@ -0,0 +1,86 @@
+package automail;
+
+/**
+ * Counts how long items waited between arriving and being delivered, in the manner of an HDR
+ * histogram. Delays under 128 ticks have a bucket each; above that every doubling of the delay is
+ * split into 64 buckets, so a percentile is within 1/64 of the true delay. The buckets cover every
+ * int in a fixed array, so recording never allocates.
+ */
+public class DelayHistogram {
+
+	/** log2 of the buckets in each doubling */
+	private static final int SUB_BITS = 6;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	/** Enough buckets for Integer.MAX_VALUE */
+	private static final int BUCKETS = (32 - SUB_BITS) * SUB_COUNT;
+
+	private final long[] counts = new long[BUCKETS];
+	private long total = 0;
+	private long sum = 0;
+	private int max = 0;
+
+	/**
+	 * @param delay the ticks from arrival to delivery, not negative
+	 */
+	public void record(int delay) {
+		counts[index(delay)]++;
+		total++;
+		sum += delay;
+		if (delay > max) max = delay;
+	}
+
+	/**
+	 * @return the bucket of a delay; delays under 2 * SUB_COUNT are their own bucket
+	 */
+	static int index(int delay) {
+		int shift = Math.max(0, 31 - Integer.numberOfLeadingZeros(delay) - SUB_BITS);
+		return (shift << SUB_BITS) + (delay >>> shift);
+	}
+
+	/**
+	 * @return the largest delay which falls in a bucket
+	 */
+	static int highest(int index) {
+		int shift = Math.max(0, (index >>> SUB_BITS) - 1);
+		long lowest = (long) (index - (shift << SUB_BITS)) << shift;
+		return (int) Math.min(Integer.MAX_VALUE, lowest + (1L << shift) - 1);
+	}
+
+	/**
+	 * @return the number of delays recorded
+	 */
+	public long count() {
+		return total;
+	}
+
+	/**
+	 * @return the mean delay, exactly
+	 */
+	public double mean() {
+		return total == 0 ? 0 : (double) sum / total;
+	}
+
+	/**
+	 * @param percent between 0 and 100
+	 * @return the smallest delay which at least percent% of the delays are no greater than, exact
+	 * under 128 ticks and otherwise the top of its bucket, but never more than the longest delay
+	 */
+	public int percentile(double percent) {
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+		long seen = 0;
+		int last = index(max);
+		for (int i = 0; i <= last; i++) {
+			seen += counts[i];
+			if (seen >= rank) return Math.min(highest(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * @return the longest delay
+	 */
+	public int max() {
+		return max;
+	}
+}
@@ -0,0 +1,40 @@
+package automail;
+
+import java.util.BitSet;
+
+/**
+ * Keeps track of which mail items have been delivered, indexed by the dense mail id.
+ * Checking and recording a delivery are O(1). The order of deliveries is not kept, as a
+ * full trace already prints each delivery as it happens.
+ */
+public class DeliveryLedger {
+
+	/** One bit per mail id, set once the item has been delivered */
+	private final BitSet delivered;
+	private int count;
+
+	public DeliveryLedger() {
+		delivered = new BitSet();
+		count = 0;
+	}
+
+	/**
+	 * Records a delivery
+	 * @param mailItem the mail item being delivered
+	 * @return false if the item had already been delivered, in which case nothing is recorded
+	 */
+	public boolean record(MailItem mailItem) {
+		int id = mailItem.getId();
+		if (delivered.get(id)) return false;
+		delivered.set(id);
+		count++;
+		return true;
+	}
+
+	/**
+	 * @return the number of items delivered so far
+	 */
+	public int size() {
+		return count;
+	}
+}
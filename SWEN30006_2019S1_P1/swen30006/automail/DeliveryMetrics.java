@@ -0,0 +1,245 @@
+package automail;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What a run did besides its score: how long items waited, overall and by priority level, how
+ * much mail waited in the pool, and how the robots spent their time. Delays are always kept, as
+ * they cost a bucket increment per delivery. The pool and the robots are only looked at each tick
+ * once track() or sampleTo() has been called.
+ *
+ * At the end of a run the metrics can be exported as CSV, one metric,group,statistic,value row per
+ * figure, or as JSON. During a run a row of the figures so far can be written every so many
+ * ticks, so a long run can be watched as it goes.
+ */
+public class DeliveryMetrics {
+
+	static final String SAMPLE_HEADER = "time,delivered,pool_depth,waiting,delivering,returning,delay_p50,delay_p95,delay_p99,delay_max";
+	private static final double[] PERCENTILES = { 50, 90, 95, 99, 99.9 };
+	private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+
+	private final DelayHistogram delays = new DelayHistogram();
+	/** The priority levels seen, in increasing order, and the delays of each */
+	private int[] priorities = new int[0];
+	private DelayHistogram[] byPriority = new DelayHistogram[0];
+
+	private boolean tracking = false;
+	/** The ticks looked at, and the robot-ticks spent in each state */
+	private long ticks = 0;
+	private int robots = 0;
+	private final long[] robotTicks = new long[STATES.length];
+	private final int[] inState = new int[STATES.length];
+	/** The sum over the ticks of the items in the pool, and the most there were */
+	private long depthTicks = 0;
+	private int maxDepth = 0;
+
+	private PrintWriter samples;
+	private int interval;
+	private int nextSample;
+
+	/**
+	 * Has tick() look at the pool and the robots
+	 */
+	public void track() {
+		tracking = true;
+	}
+
+	/**
+	 * @return whether tick() should be called
+	 */
+	public boolean isTracking() {
+		return tracking;
+	}
+
+	/**
+	 * Writes a row of the figures so far every so many ticks, and tracks the pool and robots
+	 * @param out where to write the rows, which is flushed after each
+	 * @param interval the ticks between rows
+	 */
+	public void sampleTo(Writer out, int interval) {
+		this.samples = new PrintWriter(out);
+		this.interval = Math.max(1, interval);
+		this.nextSample = 0;
+		samples.println(SAMPLE_HEADER);
+		samples.flush();
+		track();
+	}
+
+	/**
+	 * @return the first tick after the given one at which a row is due, or Integer.MAX_VALUE if
+	 * no rows are written; a run which skips ticks must not skip this one
+	 */
+	public int nextSampleAfter(int time) {
+		return samples == null ? Integer.MAX_VALUE : (time / interval + 1) * interval;
+	}
+
+	/**
+	 * @param time the time of delivery
+	 * @param mailItem the item delivered
+	 */
+	public void delivered(int time, MailItem mailItem) {
+		int delay = time - mailItem.getArrivalTime();
+		delays.record(delay);
+		int priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+		histogram(priority).record(delay);
+	}
+
+	/**
+	 * @return the delays of a priority level, added the first time the level is seen
+	 */
+	private DelayHistogram histogram(int priority) {
+		int i = Arrays.binarySearch(priorities, priority);
+		if (i >= 0) return byPriority[i];
+		i = -i - 1;
+		int[] grownPriorities = new int[priorities.length + 1];
+		DelayHistogram[] grown = new DelayHistogram[byPriority.length + 1];
+		System.arraycopy(priorities, 0, grownPriorities, 0, i);
+		System.arraycopy(byPriority, 0, grown, 0, i);
+		System.arraycopy(priorities, i, grownPriorities, i + 1, priorities.length - i);
+		System.arraycopy(byPriority, i, grown, i + 1, byPriority.length - i);
+		grownPriorities[i] = priority;
+		grown[i] = new DelayHistogram();
+		priorities = grownPriorities;
+		byPriority = grown;
+		return grown[i];
+	}
+
+	/**
+	 * Looks at the pool and the robots after a tick has been simulated
+	 * @param time the tick
+	 * @param span the ticks until the next is simulated, over which nothing but travel happens
+	 * @param poolDepth the items in the pool
+	 * @param fleet the robots
+	 */
+	public void tick(int time, int span, int poolDepth, Robot[] fleet) {
+		Arrays.fill(inState, 0);
+		for (Robot robot : fleet) inState[robot.getState().ordinal()]++;
+		for (int s = 0; s < STATES.length; s++) robotTicks[s] += (long) inState[s] * span;
+		robots = fleet.length;
+		ticks += span;
+		depthTicks += (long) poolDepth * span;
+		maxDepth = Math.max(maxDepth, poolDepth);
+		if (samples != null && time >= nextSample) {
+			samples.printf(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%d,%d,%d,%d%n", time, delays.count(), poolDepth,
+					inState[Robot.RobotState.WAITING.ordinal()], inState[Robot.RobotState.DELIVERING.ordinal()],
+					inState[Robot.RobotState.RETURNING.ordinal()],
+					delays.percentile(50), delays.percentile(95), delays.percentile(99), delays.max());
+			samples.flush();
+			nextSample = (time / interval + 1) * interval;
+		}
+	}
+
+	/**
+	 * @return the delays of every item delivered
+	 */
+	public DelayHistogram getDelays() {
+		return delays;
+	}
+
+	/**
+	 * @return the delays of the items of a priority level, where 0 is no priority, or null if none were delivered
+	 */
+	public DelayHistogram getDelays(int priority) {
+		int i = Arrays.binarySearch(priorities, priority);
+		return i >= 0 ? byPriority[i] : null;
+	}
+
+	/**
+	 * @return the fraction of the robots' time spent in a state, or 0 if nothing was tracked
+	 */
+	public double utilisation(Robot.RobotState state) {
+		return (ticks == 0 || robots == 0) ? 0 : (double) robotTicks[state.ordinal()] / (ticks * robots);
+	}
+
+	/**
+	 * @return the mean number of items in the pool per tick, or 0 if nothing was tracked
+	 */
+	public double meanPoolDepth() {
+		return ticks == 0 ? 0 : (double) depthTicks / ticks;
+	}
+
+	/**
+	 * Writes the metrics to a file, as JSON if its name ends in .json and otherwise as CSV
+	 */
+	public void export(String fileName, int finalTime, double score) throws IOException {
+		try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)))) {
+			if (fileName.toLowerCase(Locale.ROOT).endsWith(".json")) {
+				writeJson(out, finalTime, score);
+			} else {
+				writeCsv(out, finalTime, score);
+			}
+		}
+	}
+
+	public void writeCsv(PrintWriter out, int finalTime, double score) {
+		out.println("metric,group,statistic,value");
+		out.printf(Locale.ROOT, "run,all,final_time,%d%n", finalTime);
+		out.printf(Locale.ROOT, "run,all,final_score,%.2f%n", score);
+		csvDelays(out, "all", delays);
+		for (int i = 0; i < priorities.length; i++) csvDelays(out, "priority " + priorities[i], byPriority[i]);
+		if (!tracking) return;
+		out.printf(Locale.ROOT, "pool_depth,all,mean,%.3f%n", meanPoolDepth());
+		out.printf(Locale.ROOT, "pool_depth,all,max,%d%n", maxDepth);
+		for (Robot.RobotState state : STATES) {
+			out.printf(Locale.ROOT, "robot_ticks,%s,total,%d%n", state, robotTicks[state.ordinal()]);
+			out.printf(Locale.ROOT, "robot_ticks,%s,fraction,%.4f%n", state, utilisation(state));
+		}
+	}
+
+	private static void csvDelays(PrintWriter out, String group, DelayHistogram histogram) {
+		out.printf(Locale.ROOT, "delay,%s,count,%d%n", group, histogram.count());
+		out.printf(Locale.ROOT, "delay,%s,mean,%.3f%n", group, histogram.mean());
+		for (double percent : PERCENTILES) {
+			out.printf(Locale.ROOT, "delay,%s,p%s,%d%n", group, percentName(percent), histogram.percentile(percent));
+		}
+		out.printf(Locale.ROOT, "delay,%s,max,%d%n", group, histogram.max());
+	}
+
+	public void writeJson(PrintWriter out, int finalTime, double score) {
+		out.printf(Locale.ROOT, "{%n  \"final_time\": %d,%n  \"final_score\": %.2f,%n", finalTime, score);
+		out.printf("  \"delay\": {%n    \"all\": %s,%n    \"priority\": {", jsonDelays(delays));
+		for (int i = 0; i < priorities.length; i++) {
+			out.printf("%s%n      \"%d\": %s", i == 0 ? "" : ",", priorities[i], jsonDelays(byPriority[i]));
+		}
+		out.printf("%n    }%n  }");
+		if (tracking) {
+			out.printf(Locale.ROOT, ",%n  \"pool_depth\": { \"mean\": %.3f, \"max\": %d },%n  \"robot_ticks\": {", meanPoolDepth(), maxDepth);
+			for (int s = 0; s < STATES.length; s++) {
+				out.printf(Locale.ROOT, "%s%n    \"%s\": { \"total\": %d, \"fraction\": %.4f }", s == 0 ? "" : ",", STATES[s],
+						robotTicks[s], utilisation(STATES[s]));
+			}
+			out.printf("%n  }");
+		}
+		out.printf("%n}%n");
+	}
+
+	private static String jsonDelays(DelayHistogram histogram) {
+		StringBuilder json = new StringBuilder();
+		json.append(String.format(Locale.ROOT, "{ \"count\": %d, \"mean\": %.3f", histogram.count(), histogram.mean()));
+		for (double percent : PERCENTILES) {
+			json.append(String.format(Locale.ROOT, ", \"p%s\": %d", percentName(percent), histogram.percentile(percent)));
+		}
+		return json.append(String.format(Locale.ROOT, ", \"max\": %d }", histogram.max())).toString();
+	}
+
+	/**
+	 * @return 50 for 50, 99_9 for 99.9
+	 */
+	private static String percentName(double percent) {
+		return (percent == Math.rint(percent)) ? String.valueOf((int) percent) : String.valueOf(percent).replace('.', '_');
+	}
+
+	/**
+	 * Stops writing samples
+	 */
+	public void close() {
+		if (samples != null) samples.close();
+		samples = null;
+	}
+}
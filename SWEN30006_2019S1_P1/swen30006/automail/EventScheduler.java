@@ -0,0 +1,113 @@
+package automail;
+
+import java.util.PriorityQueue;
+
+import strategies.Automail;
+
+/**
+ * Works out which ticks of the simulation can do anything, so that the clock can jump straight
+ * from one to the next. Between two such ticks nothing arrives, the mail pool has no robot to load
+ * and every robot is either idle in the mailroom or moving between floors, so those ticks are
+ * replayed with Robot.travel() rather than being stepped one at a time.
+ */
+public class EventScheduler {
+
+	/** The things which make a tick worth simulating */
+	public enum EventType { ARRIVAL, LOAD, ROBOT_DEPARTS, ROBOT_AT_FLOOR, ROBOT_AT_MAILROOM }
+
+	private static class Event implements Comparable<Event> {
+		final int time;
+		final EventType type;
+		/** The index of the robot concerned, or -1 */
+		final int robot;
+
+		Event(int time, EventType type, int robot) {
+			this.time = time;
+			this.type = type;
+			this.robot = robot;
+		}
+
+		@Override
+		public int compareTo(Event other) {
+			return Integer.compare(time, other.time);
+		}
+	}
+
+	private final Automail automail;
+	private final MailGenerator mailGenerator;
+	private final PriorityQueue<Event> events;
+	/** The time of the latest event queued for each robot; older ones are stale */
+	private final int[] robotEvents;
+	private int arrivalEvent;
+
+	public EventScheduler(Automail automail, MailGenerator mailGenerator) {
+		this.automail = automail;
+		this.mailGenerator = mailGenerator;
+		this.events = new PriorityQueue<Event>();
+		this.robotEvents = new int[automail.robots.length];
+		this.arrivalEvent = -1;
+	}
+
+	/**
+	 * Queues whatever will happen next, following the tick that has just been simulated
+	 * @param time the tick that has just been simulated
+	 */
+	public void update(int time) {
+		int next = mailGenerator.nextArrivalTime(time);
+		if (next != -1 && next != arrivalEvent) {
+			events.add(new Event(next, EventType.ARRIVAL, -1));
+			arrivalEvent = next;
+		}
+		if (automail.mailPool.hasWork()) {
+			events.add(new Event(time + 1, EventType.LOAD, -1));
+		}
+		for (int i = 0; i < robotEvents.length; i++) {
+			Robot robot = automail.robots[i];
+			int steps = robot.travelSteps();
+			if (steps == Integer.MAX_VALUE) {
+				robotEvents[i] = -1;
+				continue;
+			}
+			int at = time + 1 + steps;
+			if (at != robotEvents[i]) {
+				EventType type = EventType.ROBOT_DEPARTS;
+				if (robot.getState() == Robot.RobotState.DELIVERING) {
+					type = EventType.ROBOT_AT_FLOOR;
+				} else if (robot.getState() == Robot.RobotState.RETURNING) {
+					type = EventType.ROBOT_AT_MAILROOM;
+				}
+				events.add(new Event(at, type, i));
+				robotEvents[i] = at;
+			}
+		}
+	}
+
+	/**
+	 * @param time the tick that has just been simulated
+	 * @return the next tick at which something happens, or the following tick if nothing is queued
+	 */
+	public int next(int time) {
+		while (!events.isEmpty()) {
+			Event event = events.peek();
+			if (event.time <= time || (event.robot != -1 && robotEvents[event.robot] != event.time)) {
+				events.poll(); // already simulated, or the robot has been rescheduled since
+			} else {
+				return event.time;
+			}
+		}
+		return time + 1;
+	}
+
+	/**
+	 * Moves every robot through the ticks which are skipped
+	 * @param ticks the number of ticks skipped
+	 */
+	public void skip(int ticks) {
+		if (ticks == 0) return;
+		if (automail.fleet != null) {
+			automail.fleet.travel(ticks);
+			return;
+		}
+		for (Robot robot : automail.robots) robot.travel(ticks);
+	}
+}
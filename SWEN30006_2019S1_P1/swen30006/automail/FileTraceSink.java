@@ -0,0 +1,122 @@
+package automail;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes trace messages to a file from a background thread.
+ * The simulation only queues each message; formatting and writing happen on the writer thread,
+ * which takes the messages in batches. If the writer thread fails, the next message traced or
+ * close() throws, rather than waiting for room in a queue which is no longer emptied.
+ */
+public class FileTraceSink implements ITraceSink {
+
+	private static class Message {
+		final String format;
+		final Object[] args;
+
+		Message(String format, Object[] args) {
+			this.format = format;
+			this.args = args;
+		}
+	}
+
+	/** Tells the writer thread to finish */
+	private static final Message END = new Message(null, null);
+	private static final int QUEUE_SIZE = 8192;
+	/** How long to wait for room in the queue before checking the writer thread is still running */
+	private static final long WAIT_MILLIS = 100;
+
+	private final TraceLevel level;
+	private final BlockingQueue<Message> queue;
+	private final Thread writer;
+	/** Why the writer thread stopped early, or null */
+	private volatile Throwable failure;
+
+	/**
+	 * @param level the most detailed level of message to write
+	 * @param fileName the file to write the messages to, which is overwritten
+	 */
+	public FileTraceSink(TraceLevel level, String fileName) throws IOException {
+		this.level = level;
+		this.queue = new ArrayBlockingQueue<Message>(QUEUE_SIZE);
+		final BufferedWriter out = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+		this.writer = new Thread(() -> write(out), "trace-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private void write(BufferedWriter out) {
+		ArrayList<Message> batch = new ArrayList<Message>(QUEUE_SIZE);
+		Formatter formatter = new Formatter(out);
+		try {
+			boolean ended = false;
+			while (!ended) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				for (Message message : batch) {
+					if (message == END) {
+						ended = true;
+						break;
+					}
+					formatter.format(message.format, message.args);
+				}
+				batch.clear();
+				if (queue.isEmpty()) formatter.flush();
+			}
+			IOException e = formatter.ioException();
+			if (e != null) throw e;
+			out.close();
+		} catch (InterruptedException e) {
+			failure = e;
+			Thread.currentThread().interrupt();
+		} catch (Throwable e) {
+			failure = e;
+		}
+	}
+
+	private RuntimeException failed() {
+		if (failure instanceof IOException) return new UncheckedIOException((IOException) failure);
+		return new IllegalStateException("The trace writer stopped", failure);
+	}
+
+	@Override
+	public boolean enabled(TraceLevel level) {
+		return level != TraceLevel.OFF && this.level.compareTo(level) >= 0;
+	}
+
+	@Override
+	public void trace(TraceLevel level, String format, Object... args) {
+		if (enabled(level)) put(new Message(format, args));
+	}
+
+	private void put(Message message) {
+		if (failure != null) throw failed();
+		try {
+			while (!queue.offer(message, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (!writer.isAlive()) throw failed();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() {
+		put(END);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) throw failed();
+	}
+
+}
@@ -0,0 +1,29 @@
+package automail;
+
+/**
+ * a TraceSink receives the messages reported by a simulation run.
+ * Messages are given as a format and its arguments, and are only formatted if they are written out,
+ * so callers should check enabled() first to avoid even building the arguments.
+ */
+public interface ITraceSink {
+
+	/**
+	 * @param level the level of a message
+	 * @return true if messages at this level are written out
+	 */
+	boolean enabled(TraceLevel level);
+
+	/**
+	 * Reports a message
+	 * @param level the level of the message
+	 * @param format a format string as for String.format
+	 * @param args the arguments for the format, which must not change afterwards
+	 */
+	void trace(TraceLevel level, String format, Object... args);
+
+	/**
+	 * Writes out anything outstanding; no more messages may be reported afterwards
+	 */
+	void close();
+
+}
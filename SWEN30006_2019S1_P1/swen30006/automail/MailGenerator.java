@@ -5,30 +5,37 @@ import java.util.*;
 import strategies.IMailPool;
 
 /**
- * This class generates the mail
+ * This class generates the mail, all of it before the first tick
  */
 public class MailGenerator {
 
+    /** The log line for an arrival */
+    static final String ARRIVAL_FORMAT = "T: %3d > new addToPool [%s]%n";
+
     public final int MAIL_TO_CREATE;
     public final int MAIL_MAX_WEIGHT;
     
     private int mailCreated;
 
-    private final Random random;
+    protected final Random random;
     /** This seed is used to make the behaviour deterministic */
     
     private boolean complete;
+    protected final SimulationContext context;
     private IMailPool mailPool;
 
-    private Map<Integer,ArrayList<MailItem>> allMail;
+    private TreeMap<Integer,ArrayList<MailItem>> allMail;
+    /** The arrival times which already have a priority item */
+    private BitSet priorityTimes;
 
     /**
      * Constructor for mail generation
+     * @param context the simulation run the mail belongs to
      * @param mailToCreate roughly how many mail items to create
      * @param mailPool where mail items go on arrival
      * @param seed random seed for generating mail
      */
-    public MailGenerator(int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed){
+    public MailGenerator(SimulationContext context, int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed){
         if(seed.containsKey(true)){
         	this.random = new Random((long) seed.get(true));
         }
@@ -41,7 +48,27 @@ public class MailGenerator {
         // System.out.println("Num Mail Items: "+MAIL_TO_CREATE);
         mailCreated = 0;
         complete = false;
-        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        allMail = new TreeMap<Integer,ArrayList<MailItem>>();
+        priorityTimes = new BitSet();
+        this.context = context;
+        this.mailPool = mailPool;
+    }
+
+    /**
+     * Constructor for mail which comes from elsewhere, so is not generated at random
+     * @param context the simulation run the mail belongs to
+     * @param mailCount exactly how many mail items there are
+     * @param mailPool where mail items go on arrival
+     */
+    protected MailGenerator(SimulationContext context, int mailCount, int mailMaxWeight, IMailPool mailPool){
+        this.random = null;
+        MAIL_TO_CREATE = mailCount;
+        MAIL_MAX_WEIGHT = mailMaxWeight;
+        mailCreated = 0;
+        complete = true;
+        allMail = new TreeMap<Integer,ArrayList<MailItem>>();
+        priorityTimes = new BitSet();
+        this.context = context;
         this.mailPool = mailPool;
     }
 
@@ -56,12 +83,12 @@ public class MailGenerator {
         int weight = generateWeight();
         // Check if arrival time has a priority mail
         if(	(random.nextInt(6) > 0) ||  // Skew towards non priority mail
-        	(allMail.containsKey(arrival_time) &&
-        	allMail.get(arrival_time).stream().anyMatch(e -> PriorityMailItem.class.isInstance(e))))
+        	priorityTimes.get(arrival_time))
         {
-        	newMailItem = new MailItem(dest_floor,arrival_time,weight);      	
+        	newMailItem = new MailItem(context.nextMailId(), dest_floor,arrival_time,weight);      	
         } else {
-        	newMailItem = new PriorityMailItem(dest_floor,arrival_time,weight,priority_level);
+        	newMailItem = new PriorityMailItem(context.nextMailId(), dest_floor,arrival_time,weight,priority_level);
+        	priorityTimes.set(arrival_time);
         }
         return newMailItem;
     }
@@ -70,13 +97,21 @@ public class MailGenerator {
      * @return a destination floor between the ranges of GROUND_FLOOR to FLOOR
      */
     private int generateDestinationFloor(){
-        return Building.LOWEST_FLOOR + random.nextInt(Building.FLOORS);
+        return generateDestinationFloor(random);
+    }
+
+    protected int generateDestinationFloor(Random random){
+        return Building.LOWEST_FLOOR + random.nextInt(context.building.FLOORS);
     }
 
     /**
      * @return a random priority level selected from 1 - 100
      */
     private int generatePriorityLevel(){
+        return generatePriorityLevel(random);
+    }
+
+    protected int generatePriorityLevel(Random random){
         return 10*(1 + random.nextInt(10));
     }
 
@@ -84,6 +119,10 @@ public class MailGenerator {
      * @return a random weight
      */
     private int generateWeight(){
+        return generateWeight(random);
+    }
+
+    protected int generateWeight(Random random){
     	final double mean = 200.0; // grams for normal item
     	final double stddev = 1000.0; // grams
     	double base = random.nextGaussian();
@@ -96,7 +135,7 @@ public class MailGenerator {
      * @return a random arrival time before the last delivery time
      */
     private int generateArrivalTime(){
-        return 1 + random.nextInt(Clock.LAST_DELIVERY_TIME);
+        return 1 + random.nextInt(context.clock.LAST_DELIVERY_TIME);
     }
 
     /**
@@ -130,6 +169,15 @@ public class MailGenerator {
 
     }
     
+    /**
+     * @param time the current time
+     * @return the next time after the given time at which mail arrives, or -1 if no more mail arrives
+     */
+    public int nextArrivalTime(int time){
+    	Integer next = allMail.higherKey(time);
+    	return next == null ? -1 : next;
+    }
+    
     /**
      * While there are steps left, create a new mail item to deliver
      * @return Priority
@@ -137,14 +185,25 @@ public class MailGenerator {
     public PriorityMailItem step(){
     	PriorityMailItem priority = null;
     	// Check if there are any mail to create
-        if(this.allMail.containsKey(Clock.Time())){
-            for(MailItem mailItem : allMail.get(Clock.Time())){
+        if(this.allMail.containsKey(context.clock.Time())){
+            for(MailItem mailItem : allMail.get(context.clock.Time())){
             	if (mailItem instanceof PriorityMailItem) priority = ((PriorityMailItem) mailItem);
-                System.out.printf("T: %3d > new addToPool [%s]%n", Clock.Time(), mailItem.toString());
-                mailPool.addToPool(mailItem);
+                arrive(mailItem);
             }
         }
         return priority;
     }
+
+    /**
+     * Reports a mail item arriving and puts it in the mail pool
+     * @param mailItem the item which has just arrived
+     */
+    protected void arrive(MailItem mailItem){
+        if (context.trace.enabled(TraceLevel.FULL)) {
+        	context.trace.trace(TraceLevel.FULL, ARRIVAL_FORMAT, context.clock.Time(), mailItem);
+        }
+        if (context.binaryTrace != null) context.binaryTrace.arrival(context.clock.Time(), mailItem);
+        mailPool.addToPool(mailItem);
+    }
     
 }
@@ -1,10 +1,5 @@
 package automail;
 
-import java.util.Map;
-import java.util.TreeMap;
-
-// import java.util.UUID;
-
 /**
  * Represents a mail item
  */
@@ -12,8 +7,8 @@ public class MailItem {
 	
     /** Represents the destination floor to which the mail is intended to go */
     protected final int destination_floor;
-    /** The mail identifier */
-    protected final String id;
+    /** The mail identifier, handed out densely from 0 in order of creation in each run */
+    protected final int id;
     /** The time the mail item arrived */
     protected final int arrival_time;
     /** The weight in grams of the mail item */
@@ -21,20 +16,21 @@ public class MailItem {
 
     /**
      * Constructor for a MailItem
+     * @param id the mail identifier
      * @param dest_floor the destination floor intended for this mail item
      * @param arrival_time the time that the mail arrived
      * @param weight the weight of this mail item
      */
-    public MailItem(int dest_floor, int arrival_time, int weight){
+    public MailItem(int id, int dest_floor, int arrival_time, int weight){
         this.destination_floor = dest_floor;
-        this.id = String.valueOf(hashCode());
+        this.id = id;
         this.arrival_time = arrival_time;
         this.weight = weight;
     }
 
     @Override
     public String toString(){
-        return String.format("Mail Item:: ID: %6s | Arrival: %4d | Destination: %2d | Weight: %4d", id, arrival_time, destination_floor, weight);
+        return String.format("Mail Item:: ID: %6d | Arrival: %4d | Destination: %2d | Weight: %4d", id, arrival_time, destination_floor, weight);
     }
 
     /**
@@ -49,7 +45,7 @@ public class MailItem {
      *
      * @return the ID of the mail item
      */
-    public String getId() {
+    public int getId() {
         return id;
     }
 
@@ -69,14 +65,8 @@ public class MailItem {
        return weight;
    }
    
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
-
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return id;
 	}
 }
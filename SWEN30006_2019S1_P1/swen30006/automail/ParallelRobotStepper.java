@@ -0,0 +1,99 @@
+package automail;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import exceptions.ExcessiveDeliveryException;
+
+/**
+ * Steps the robots of a run on several threads, with the same result as stepping them one after
+ * another. The robots are split into contiguous slices, one per worker. A worker moves each robot
+ * of its slice which is only travelling this tick, since that touches nothing but the robot, and
+ * keeps the indexes of the robots whose step has side effects: returning mail to the pool,
+ * registering with it, delivering, or changing state. Once every worker is done, those robots are
+ * stepped on the calling thread in index order, so the pool, the deliveries and the trace see them
+ * in the same order as Robot.step() would give.
+ */
+public class ParallelRobotStepper {
+
+	private final Robot[] robots;
+	private final ForkJoinPool pool;
+	private final ArrayList<Callable<Void>> slices;
+	/** The robots of each slice to step in order, and how many there are this tick */
+	private final int[][] pending;
+	private final int[] pendingCount;
+
+	/**
+	 * @param robots the robots, stepped in this order
+	 * @param threads the number of workers
+	 */
+	public ParallelRobotStepper(Robot[] robots, int threads) {
+		this.robots = robots;
+		this.pool = new ForkJoinPool(threads);
+		int sliceCount = Math.max(1, Math.min(threads, robots.length));
+		this.slices = new ArrayList<Callable<Void>>(sliceCount);
+		this.pending = new int[sliceCount][];
+		this.pendingCount = new int[sliceCount];
+		for (int s = 0; s < sliceCount; s++) {
+			final int slice = s;
+			final int from = (int) ((long) robots.length * s / sliceCount);
+			final int to = (int) ((long) robots.length * (s + 1) / sliceCount);
+			pending[s] = new int[to - from];
+			slices.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					move(slice, from, to);
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Moves the travelling robots of a slice one step and keeps the rest for stepping in order
+	 */
+	private void move(int slice, int from, int to) {
+		int[] keep = pending[slice];
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			Robot robot = robots[i];
+			int steps = robot.travelSteps();
+			if (steps <= 0) {
+				keep[count++] = i;
+			} else if (steps != Integer.MAX_VALUE) {
+				robot.travel(1);
+			}
+		}
+		pendingCount[slice] = count;
+	}
+
+	/**
+	 * Steps every robot once
+	 * @throws ExcessiveDeliveryException if a robot delivers more than the capacity of its tube without refilling
+	 */
+	public void step() throws ExcessiveDeliveryException {
+		for (Future<Void> future : pool.invokeAll(slices)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while stepping the robots", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Unable to step the robots", e.getCause());
+			}
+		}
+		for (int s = 0; s < pending.length; s++) {
+			for (int k = 0; k < pendingCount[s]; k++) robots[pending[s][k]].step();
+		}
+	}
+
+	/**
+	 * Stops the workers
+	 */
+	public void close() {
+		pool.shutdown();
+	}
+}
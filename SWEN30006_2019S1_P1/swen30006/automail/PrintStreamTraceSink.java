@@ -0,0 +1,36 @@
+package automail;
+
+import java.io.PrintStream;
+
+/**
+ * Writes trace messages straight to a PrintStream, such as System.out
+ */
+public class PrintStreamTraceSink implements ITraceSink {
+
+	/** Reports nothing, for runs where only the results matter */
+	public static final PrintStreamTraceSink OFF = new PrintStreamTraceSink(TraceLevel.OFF, System.out);
+
+	private final TraceLevel level;
+	private final PrintStream out;
+
+	public PrintStreamTraceSink(TraceLevel level, PrintStream out) {
+		this.level = level;
+		this.out = out;
+	}
+
+	@Override
+	public boolean enabled(TraceLevel level) {
+		return level != TraceLevel.OFF && this.level.compareTo(level) >= 0;
+	}
+
+	@Override
+	public void trace(TraceLevel level, String format, Object... args) {
+		if (enabled(level)) out.printf(format, args);
+	}
+
+	@Override
+	public void close() {
+		out.flush();
+	}
+
+}
@@ -0,0 +1,338 @@
+package automail;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.LockSupport;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import strategies.ConcurrentMailPool;
+
+/**
+ * Runs the mail pool and robots as a soft real-time controller rather than a simulation. Each tick
+ * starts at a fixed wall-clock period from the last. The driver thread runs the mail pool, and a
+ * set of controller threads then step the robots, each thread looking after its own slice of the
+ * fleet. Mail is not generated but read from a file, which may be a named pipe, on a thread of its
+ * own and pushed into the pool whenever it turns up. The Robot code is unchanged: it reaches the
+ * pool through a ConcurrentMailPool and the deliveries through a synchronized IMailDelivery.
+ *
+ * Each line of the arrivals file is "floor,weight" or "floor,weight,priority", and lines starting
+ * with # are skipped. The run ends once the file is exhausted and everything read has been
+ * delivered, or after maxTicks ticks if that is given. It then reports how late the ticks started
+ * against the period (jitter), how long their work took and how many overran the period, and the
+ * time from each item being pushed to the robot carrying it being dispatched.
+ *
+ * Usage: RealTimeDriver arrivalsFile [tickMillis] [controllers] [maxTicks]
+ */
+public class RealTimeDriver {
+
+	private final SimulationContext context;
+	private final ConcurrentMailPool mailPool;
+	private final TimedRobot[] robots;
+	private final long periodNanos;
+	private final int controllers;
+	private final int maxTicks;
+	private final String arrivalsFile;
+
+	/** The current tick, for the threads which do not wait on the tick barrier */
+	private volatile int tick;
+	private volatile boolean stopping;
+	private volatile boolean inputDone;
+	private volatile int pushed;
+	private volatile Throwable failure;
+	/** When each item not yet dispatched was pushed, by mail id */
+	private final ConcurrentHashMap<Integer, Long> pushedAt = new ConcurrentHashMap<Integer, Long>();
+
+	private final Deliveries deliveries = new Deliveries();
+	/** How late each tick started, and how long its work took, in nanoseconds */
+	private final Samples jitter = new Samples();
+	private final Samples work = new Samples();
+	/** The time from each item being pushed to its first dispatch, in nanoseconds */
+	private final Samples dispatchLatency = new Samples();
+	private int overruns;
+
+	/**
+	 * @param configuration the building, fleet and tracing to run with
+	 * @param arrivalsFile the file or named pipe to read arrivals from
+	 * @param tickMillis the wall-clock length of a tick
+	 * @param controllers the number of threads stepping the robots
+	 * @param maxTicks the number of ticks to stop after, or 0 to run until all the mail is delivered
+	 */
+	public RealTimeDriver(Configuration configuration, ITraceSink trace, String arrivalsFile, double tickMillis, int controllers, int maxTicks) {
+		this.context = new SimulationContext(configuration, trace, null);
+		this.mailPool = new ConcurrentMailPool(configuration.robots);
+		this.robots = new TimedRobot[configuration.robots];
+		for (int i = 0; i < robots.length; i++) robots[i] = new TimedRobot(this);
+		this.periodNanos = (long) (tickMillis * 1e6);
+		this.controllers = Math.max(1, Math.min(controllers, robots.length));
+		this.maxTicks = maxTicks;
+		this.arrivalsFile = arrivalsFile;
+	}
+
+	/**
+	 * A Robot which notes when the items it is loaded with were pushed, once it is sent off.
+	 * The mail pool loads and dispatches robots on the driver thread only.
+	 */
+	private static class TimedRobot extends Robot {
+		private final RealTimeDriver driver;
+		private int handId = -1;
+		private final ArrayList<Integer> tubeIds = new ArrayList<Integer>();
+
+		TimedRobot(RealTimeDriver driver) {
+			super(driver.context, driver.deliveries, driver.mailPool);
+			this.driver = driver;
+		}
+
+		@Override
+		public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
+			handId = mailItem.getId();
+			super.addToHand(mailItem);
+		}
+
+		@Override
+		public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
+			tubeIds.add(mailItem.getId());
+			super.addToTube(mailItem);
+		}
+
+		@Override
+		public void resetPriority() {
+			handId = -1;
+			super.resetPriority();
+		}
+
+		@Override
+		public void dispatch() {
+			super.dispatch();
+			long now = System.nanoTime();
+			driver.dispatched(handId, now);
+			for (int tubeId : tubeIds) driver.dispatched(tubeId, now);
+			handId = -1;
+			tubeIds.clear();
+		}
+	}
+
+	private void dispatched(int mailId, long now) {
+		if (mailId < 0) return;
+		Long at = pushedAt.remove(mailId);
+		if (at != null) dispatchLatency.add(now - at);
+	}
+
+	/**
+	 * Confirms deliveries from any controller thread
+	 */
+	private class Deliveries implements IMailDelivery {
+		private final DeliveryLedger ledger = new DeliveryLedger();
+		private double score = 0;
+
+		@Override
+		public synchronized void deliver(MailItem deliveryItem) {
+			if (!ledger.record(deliveryItem)) {
+				System.err.printf("Mail item %d delivered twice%n", deliveryItem.getId());
+				return;
+			}
+			if (context.trace.enabled(TraceLevel.FULL)) {
+				context.trace.trace(TraceLevel.FULL, Simulation.DELIVERED_FORMAT, tick, ledger.size(), deliveryItem);
+			}
+			score += Simulation.deliveryScore(tick, deliveryItem);
+		}
+
+		synchronized int delivered() {
+			return ledger.size();
+		}
+
+		synchronized double score() {
+			return score;
+		}
+	}
+
+	/**
+	 * A growable list of nanosecond samples, only added to by one thread
+	 */
+	private static class Samples {
+		private long[] values = new long[1024];
+		private int count = 0;
+
+		void add(long value) {
+			if (count == values.length) values = Arrays.copyOf(values, count * 2);
+			values[count++] = value;
+		}
+
+		/**
+		 * @return the samples in milliseconds
+		 */
+		Summary millis() {
+			double[] millis = new double[count];
+			for (int i = 0; i < count; i++) millis[i] = values[i] / 1e6;
+			return new Summary(millis);
+		}
+	}
+
+	/**
+	 * Reads the arrivals file, pushing each item into the mail pool as it is read
+	 */
+	private void readArrivals() {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(arrivalsFile));
+			String line;
+			while (!stopping && (line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] fields = line.split("[,\\s]+");
+				int floor = Integer.parseInt(fields[0]);
+				int weight = Integer.parseInt(fields[1]);
+				int priority = (fields.length > 2) ? Integer.parseInt(fields[2]) : 0;
+				if (floor < Building.LOWEST_FLOOR || floor >= Building.LOWEST_FLOOR + context.building.FLOORS
+						|| weight > Robot.TRIPLE_MAX_WEIGHT) {
+					System.err.printf("Skipping arrival no robot can deliver: %s%n", line);
+					continue;
+				}
+				int time = tick;
+				MailItem mailItem = (priority == 0) ? new MailItem(context.nextMailId(), floor, time, weight)
+						: new PriorityMailItem(context.nextMailId(), floor, time, weight, priority);
+				pushedAt.put(mailItem.getId(), System.nanoTime());
+				if (context.trace.enabled(TraceLevel.FULL)) {
+					context.trace.trace(TraceLevel.FULL, MailGenerator.ARRIVAL_FORMAT, time, mailItem);
+				}
+				mailPool.addToPool(mailItem);
+				pushed++;
+			}
+		} catch (IOException|RuntimeException e) {
+			failure = e;
+		} finally {
+			inputDone = true;
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// nothing more to read anyway
+				}
+			}
+		}
+	}
+
+	/**
+	 * Steps one slice of the fleet on every tick
+	 */
+	private void control(CyclicBarrier barrier, int from, int to) {
+		try {
+			while (true) {
+				barrier.await();
+				if (stopping) return;
+				try {
+					for (int i = from; i < to; i++) robots[i].step();
+				} catch (ExcessiveDeliveryException|RuntimeException e) {
+					failure = e;
+				}
+				barrier.await();
+			}
+		} catch (InterruptedException|BrokenBarrierException e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Runs ticks at the wall-clock period until the mail is delivered or maxTicks is reached
+	 * @throws ItemTooHeavyException if the mail pool is given an item no robots can carry
+	 */
+	public void run() throws InterruptedException, BrokenBarrierException, ItemTooHeavyException {
+		final CyclicBarrier barrier = new CyclicBarrier(controllers + 1);
+		Thread[] threads = new Thread[controllers + 1];
+		for (int c = 0; c < controllers; c++) {
+			final int from = (int) ((long) robots.length * c / controllers);
+			final int to = (int) ((long) robots.length * (c + 1) / controllers);
+			threads[c] = new Thread("controller-" + c) {
+				@Override
+				public void run() {
+					control(barrier, from, to);
+				}
+			};
+		}
+		threads[controllers] = new Thread("arrivals") {
+			@Override
+			public void run() {
+				readArrivals();
+			}
+		};
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		long start = System.nanoTime();
+		try {
+			for (int n = 1; maxTicks == 0 || n <= maxTicks; n++) {
+				long due = start + n * periodNanos;
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+				long began = System.nanoTime();
+				jitter.add(began - due);
+
+				context.clock.Tick();
+				tick = context.clock.Time();
+				mailPool.step();
+				barrier.await(); // the controllers step their robots
+				barrier.await(); // and are done
+
+				long took = System.nanoTime() - began;
+				work.add(took);
+				if (took > periodNanos) overruns++;
+				if (failure != null) break;
+				if (inputDone && deliveries.delivered() == pushed) break;
+			}
+		} finally {
+			stopping = true;
+			barrier.await(); // lets the controllers see they are stopping
+		}
+	}
+
+	/**
+	 * Reports how well the ticks kept to time and how quickly mail was sent off
+	 * @param out where to print
+	 */
+	public void printMetrics(PrintStream out) {
+		out.printf("Ticks: %d of %.3f ms; Controllers: %d; Robots: %d%n", jitter.count, periodNanos / 1e6, controllers, robots.length);
+		out.printf("%-24s %12s %12s %12s %12s %12s%n", "(ms)", "mean", "p50", "p95", "p99", "max");
+		printRow(out, "Tick jitter", jitter.millis());
+		printRow(out, "Tick work", work.millis());
+		printRow(out, "Dispatch latency", dispatchLatency.millis());
+		out.printf("Overruns: %d%n", overruns);
+		out.printf("Delivered: %d of %d; Final Score: %.2f%n", deliveries.delivered(), pushed, deliveries.score());
+		if (failure != null) out.printf("Stopped by: %s%n", failure);
+	}
+
+	private static void printRow(PrintStream out, String name, Summary summary) {
+		out.printf("%-24s %12.3f %12.3f %12.3f %12.3f %12.3f%n", name, summary.mean(), summary.percentile(50),
+				summary.percentile(95), summary.percentile(99), summary.max());
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, BrokenBarrierException, ItemTooHeavyException {
+		if (args.length < 1) {
+			System.out.println("Usage: RealTimeDriver arrivalsFile [tickMillis] [controllers] [maxTicks]");
+			return;
+		}
+		double tickMillis = (args.length > 1) ? Double.parseDouble(args[1]) : 100;
+		int controllers = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int maxTicks = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+		Configuration configuration = new Configuration(Configuration.loadProperties("automail.properties"));
+		ITraceSink trace = (configuration.traceFile == null)
+				? new PrintStreamTraceSink(configuration.traceLevel, System.out)
+				: new FileTraceSink(configuration.traceLevel, configuration.traceFile);
+
+		RealTimeDriver driver = new RealTimeDriver(configuration, trace, args[0], tickMillis, controllers, maxTicks);
+		try {
+			driver.run();
+		} finally {
+			trace.close();
+		}
+		driver.printMetrics(System.out);
+	}
+}
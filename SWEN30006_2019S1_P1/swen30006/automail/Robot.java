@@ -1,10 +1,11 @@
 package automail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import exceptions.ExcessiveDeliveryException;
 import exceptions.ItemTooHeavyException;
 import strategies.IMailPool;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * The robot delivers mail!
@@ -15,8 +16,15 @@ public class Robot {
     static public final int PAIR_MAX_WEIGHT = 2600;
     static public final int TRIPLE_MAX_WEIGHT = 3000;
 
+    /** The log lines for the robot's events */
+    static final String RETURN_FORMAT = "T: %3d > old addToPool [%s]%n";
+    static final String STATE_CHANGE_FORMAT = "T: %3d > %7s changed from %s to %s%n";
+    static final String DISPATCH_FORMAT = "T: %3d > %7s-> [%s]%n";
+
+    private final SimulationContext context;
     IMailDelivery delivery;
-    protected final String id;
+    /** The robot identifier, handed out densely from 0 in order of creation in each run */
+    protected final int id;
     /** Possible states the robot can be in */
     public enum RobotState { DELIVERING, WAITING, RETURNING }
     public RobotState current_state;
@@ -26,24 +34,40 @@ public class Robot {
     private boolean receivedDispatch;
     
     private MailItem deliveryItem = null;
-    private MailItem tube = null;
+    /** The items in the tube, in the order they will be delivered once the robot is dispatched */
+    private final ArrayList<MailItem> tube;
+    private final int tubeCapacity;
+    /** The heaviest item the robot carries on its own */
+    private final int capacity;
+    /** How many floors the robot moves in a tick on its own */
+    private final int speed;
     
     private int deliveryCounter;
     
     private boolean robotDelivering = false;
     private boolean inGroup = false;
     private int inGroupStep = 0;
+    /** The item the robot's group carries, which only the robot delivering it delivers */
+    private MailItem groupItem = null;
     
 
     /**
      * Initiates the robot's location at the start to be at the mailroom
      * also set it to be waiting for mail.
-     * @param behaviour governs selection of mail items for delivery and behaviour on priority arrivals
+     * @param context the simulation run the robot belongs to
      * @param delivery governs the final delivery
      * @param mailPool is the source of mail items
      */
-    public Robot(IMailDelivery delivery, IMailPool mailPool){
-    	id = "R" + hashCode();
+    public Robot(SimulationContext context, IMailDelivery delivery, IMailPool mailPool){
+    	this(context, delivery, mailPool, RobotType.standard(context.tubeCapacity));
+    }
+
+    /**
+     * @param type what the robot can carry and how fast it moves
+     */
+    public Robot(SimulationContext context, IMailDelivery delivery, IMailPool mailPool, RobotType type){
+    	this.context = context;
+    	id = context.nextRobotId();
         // current_state = RobotState.WAITING;
     	current_state = RobotState.RETURNING;
         current_floor = Building.MAILROOM_LOCATION;
@@ -51,6 +75,10 @@ public class Robot {
         this.mailPool = mailPool;
         this.receivedDispatch = false;
         this.deliveryCounter = 0;
+        this.tubeCapacity = type.tubeCapacity;
+        this.capacity = type.capacity;
+        this.speed = type.speed;
+        this.tube = new ArrayList<MailItem>(tubeCapacity);
     }
     
     public void dispatch() {
@@ -67,11 +95,14 @@ public class Robot {
     		case RETURNING:
     			/** If its current position is at the mailroom, then the robot should change state */
                 if(current_floor == Building.MAILROOM_LOCATION){
-                	if (tube != null) {
-                		mailPool.addToPool(tube);
-                        System.out.printf("T: %3d > old addToPool [%s]%n", Clock.Time(), tube.toString());
-                        tube = null;
+                	for (MailItem tubeItem : tube) {
+                		mailPool.addToPool(tubeItem);
+                		if (context.trace.enabled(TraceLevel.FULL)) {
+                			context.trace.trace(TraceLevel.FULL, RETURN_FORMAT, context.clock.Time(), tubeItem);
+                		}
+                		if (context.binaryTrace != null) context.binaryTrace.returned(context.clock.Time(), id, tubeItem);
                 	}
+                	tube.clear();
         			/** Tell the sorter the robot is ready */
         			mailPool.registerWaiting(this);
                 	changeState(RobotState.WAITING);
@@ -86,6 +117,7 @@ public class Robot {
                 if(!isEmpty() && receivedDispatch){
                 	receivedDispatch = false;
                 	deliveryCounter = 0; // reset delivery counter
+                	planStops();
         			setRoute();
                 	changeState(RobotState.DELIVERING);
                 }
@@ -97,25 +129,25 @@ public class Robot {
     				
     				//ensures that only 1 mail item is delivered whether or not the robot is in a group
     				//or working individually
-    				if (robotDelivering || (deliveryItem.getWeight() <= INDIVIDUAL_MAX_WEIGHT)) {
+    				if (robotDelivering || deliveryItem != groupItem) {
     					delivery.deliver(deliveryItem); 
     					inGroup = false;
     					robotDelivering = false;
     				}
+    				if (deliveryItem == groupItem) groupItem = null;
                     
                     deliveryItem = null;
                     deliveryCounter++;
-                    if(deliveryCounter > 2){  // Implies a simulation bug
+                    if(deliveryCounter > tubeCapacity + 1){  // Implies a simulation bug
                     	throw new ExcessiveDeliveryException();
                     }
                     /** Check if want to return, i.e. if there is no item in the tube*/
-                    if(tube == null){
+                    if(tube.isEmpty()){
                     	changeState(RobotState.RETURNING);
                     }
                     else{
                         /** If there is another item, set the robot's route to the location to deliver the item */
-                        deliveryItem = tube;
-                        tube = null;
+                        deliveryItem = tube.remove(0);
                         setRoute();
                         changeState(RobotState.DELIVERING);
                     }
@@ -128,6 +160,84 @@ public class Robot {
     	
     }
 
+    /**
+     * @param floor the destination of an item in the tube
+     * @param handFloor the destination of the item in the robot's hand, which is delivered first
+     * @return where the item comes in the order of stops, lowest first. From the hand item's floor
+     * the robot carries on up through the stops above it, then comes down through those below it,
+     * which is the least travel for the round trip.
+     */
+    static int stopOrder(int floor, int handFloor) {
+    	return floor >= handFloor ? floor - handFloor : Integer.MAX_VALUE - floor;
+    }
+
+    /**
+     * Puts the stops of a trip in the order they will be delivered. The item in hand goes first and the
+     * tube follows in stopOrder. With sweep routing the trip may instead go up through every stop in
+     * floor order, which is taken if it scores better. A group's item always goes first, as the
+     * other robots of the group are heading for its floor.
+     * @param stops the item in hand then the tube, reordered in place
+     * @param count the number of stops
+     * @param sweep whether to consider a single sweep through the stops
+     * @param time the tick the robot sets off from the mailroom
+     * @param speed the floors the robot moves in a tick
+     */
+    static void planStops(MailItem[] stops, int count, boolean sweep, int time, int speed) {
+    	sortStops(stops, 1, count, stops[0].getDestFloor());
+    	if (!sweep) return;
+    	MailItem[] swept = Arrays.copyOf(stops, count);
+    	sortStops(swept, 0, count, Building.MAILROOM_LOCATION);
+    	if (tripScore(swept, count, time, speed) < tripScore(stops, count, time, speed)) {
+    		System.arraycopy(swept, 0, stops, 0, count);
+    	}
+    }
+
+    /**
+     * A stable insertion sort by stopOrder, over the few stops of one trip
+     */
+    private static void sortStops(MailItem[] stops, int from, int to, int floor) {
+    	for (int i = from + 1; i < to; i++) {
+    		MailItem stop = stops[i];
+    		int order = stopOrder(stop.getDestFloor(), floor);
+    		int j = i;
+    		while (j > from && stopOrder(stops[j - 1].getDestFloor(), floor) > order) {
+    			stops[j] = stops[j - 1];
+    			j--;
+    		}
+    		stops[j] = stop;
+    	}
+    }
+
+    /**
+     * @return the score the stops would add if delivered in this order from the mailroom, the ticks
+     * to travel each leg at the robot's speed plus the tick of each delivery
+     */
+    private static double tripScore(MailItem[] stops, int count, int time, int speed) {
+    	double score = 0;
+    	int floor = Building.MAILROOM_LOCATION;
+    	for (int i = 0; i < count; i++) {
+    		time += (Math.abs(stops[i].getDestFloor() - floor) + speed - 1) / speed + 1;
+    		floor = stops[i].getDestFloor();
+    		score += Simulation.deliveryScore(time, stops[i]);
+    	}
+    	return score;
+    }
+
+    /**
+     * Puts the hand and tube in the order the robot will deliver them
+     */
+    private void planStops() {
+    	boolean sweep = context.sweepRouting && !inGroup;
+    	if (deliveryItem == null || tube.size() < (sweep ? 1 : 2)) return;
+    	MailItem[] stops = new MailItem[tube.size() + 1];
+    	stops[0] = deliveryItem;
+    	for (int i = 0; i < tube.size(); i++) stops[i + 1] = tube.get(i);
+    	planStops(stops, stops.length, sweep, context.clock.Time(), speed);
+    	deliveryItem = stops[0];
+    	tube.clear();
+    	for (int i = 1; i < stops.length; i++) tube.add(stops[i]);
+    }
+
     /**
      * Sets the route for the robot
      */
@@ -154,19 +264,69 @@ public class Robot {
     	        inGroupStep = 0;
     		}
     		
-    	//speed of movement when carrying an item individually
+    	//speed of movement when carrying an item individually, up to the robot's speed
     	} else {
+    		int floors = Math.min(speed, Math.abs(destination - current_floor));
 	        if(current_floor < destination) {
-	            current_floor++;
+	            current_floor += floors;
 	        } else {
-	            current_floor--;
+	            current_floor -= floors;
 	        }
     	}
 
     }
     
-    private String getIdTube() {
-    	return String.format("%s(%1d)", id, (tube == null ? 0 : 1));
+    /**
+     * @return the number of coming steps which will only move the robot between floors, with no
+     * delivery or change of state. Integer.MAX_VALUE if the robot is idle until the mail pool loads it.
+     */
+    public int travelSteps() {
+    	switch(current_state) {
+    		case RETURNING:
+    			return stepsTo(Building.MAILROOM_LOCATION);
+    		case DELIVERING:
+    			return stepsTo(destination_floor);
+    		default:
+    			return (!isEmpty() && receivedDispatch) ? 0 : Integer.MAX_VALUE;
+    	}
+    }
+
+    /**
+     * Moves the robot as if step() had been called the given number of times
+     * @param steps no more than travelSteps()
+     */
+    public void travel(int steps) {
+    	assert(steps <= travelSteps());
+    	if (steps == 0 || current_state == RobotState.WAITING) return;
+    	int destination = (current_state == RobotState.RETURNING) ? Building.MAILROOM_LOCATION : destination_floor;
+    	int floors = Math.min(steps * speed, Math.abs(destination - current_floor));
+    	if (inGroup) {
+    		floors = (inGroupStep + steps) / 3;
+    		inGroupStep = (inGroupStep + steps) % 3;
+    	}
+    	current_floor += (current_floor < destination) ? floors : -floors;
+    }
+
+    /**
+     * @param destination the floor the robot is heading to
+     * @return the number of steps moveTowards needs to reach the destination
+     */
+    private int stepsTo(int destination) {
+    	int floors = Math.abs(destination - current_floor);
+    	return inGroup ? 3 * floors - inGroupStep : (floors + speed - 1) / speed;
+    }
+    
+    private int tubeCount() {
+    	return tube.size();
+    }
+
+    /**
+     * @param id the robot identifier
+     * @param tubeCount the number of items in the robot's tube
+     * @return the robot as it appears in the log
+     */
+    static String idTube(int id, int tubeCount) {
+    	return String.format("R%d(%1d)", id, tubeCount);
     }
     
     /**
@@ -174,65 +334,93 @@ public class Robot {
      * @param nextState the state to which the robot is transitioning
      */
     private void changeState(RobotState nextState){
-    	assert(!(deliveryItem == null && tube != null));
+    	assert(!(deliveryItem == null && !tube.isEmpty()));
+    	boolean tracing = context.trace.enabled(TraceLevel.FULL);
+    	BinaryTraceWriter binaryTrace = context.binaryTrace;
     	if (current_state != nextState) {
-            System.out.printf("T: %3d > %7s changed from %s to %s%n", Clock.Time(), getIdTube(), current_state, nextState);
+    		if (tracing) {
+    			context.trace.trace(TraceLevel.FULL, STATE_CHANGE_FORMAT, context.clock.Time(), idTube(id, tubeCount()), current_state, nextState);
+    		}
+    		if (binaryTrace != null) binaryTrace.stateChange(context.clock.Time(), id, tubeCount(), current_state, nextState);
     	}
     	current_state = nextState;
     	if(nextState == RobotState.DELIVERING){
-            System.out.printf("T: %3d > %7s-> [%s]%n", Clock.Time(), getIdTube(), deliveryItem.toString());
+    		if (tracing) {
+    			context.trace.trace(TraceLevel.FULL, DISPATCH_FORMAT, context.clock.Time(), idTube(id, tubeCount()), deliveryItem);
+    		}
+    		if (binaryTrace != null) binaryTrace.dispatch(context.clock.Time(), id, tubeCount(), deliveryItem);
     	}
     }
 
+	/**
+	 * @return the next item in the tube, or null if it is empty
+	 */
 	public MailItem getTube() {
-		return tube;
+		return tube.isEmpty() ? null : tube.get(0);
 	}
-    
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
 
+	/**
+	 * @return how many more items fit in the tube
+	 */
+	public int tubeSpace() {
+		return tubeCapacity - tube.size();
+	}
+
+	public RobotState getState() {
+		return current_state;
+	}
+    
 	@Override
 	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) { hash = count++; hashMap.put(hash0, hash); }
-		return hash;
+		return id;
 	}
 
 	public boolean isEmpty() {
-		return (deliveryItem == null && tube == null);
+		return (deliveryItem == null && tube.isEmpty());
 	}
 
 	public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
 		assert(deliveryItem == null);
 		deliveryItem = mailItem;
-		if (deliveryItem.weight > TRIPLE_MAX_WEIGHT) throw new ItemTooHeavyException();
+		if (deliveryItem.weight > Math.max(TRIPLE_MAX_WEIGHT, capacity)) throw new ItemTooHeavyException();
 	}
 
 	public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
-		assert(tube == null);
-		tube = mailItem;
-		if (tube.weight > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
+		assert(tube.size() < tubeCapacity);
+		tube.add(mailItem);
+		if (mailItem.weight > capacity) throw new ItemTooHeavyException();
 	}
 	
 	public void setRobotDelivering() {
 		robotDelivering = true;
 	}
 	
-	public String getID() {
+	public int getID() {
 		return id;
 	}
 	
+	/**
+	 * @return the heaviest item the robot carries on its own
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
 	//resets information the robot has on delivering the mail item that now is not
 	//highest priority
 	public void resetPriority() {
 		deliveryItem = null;
 		robotDelivering = false;
 		inGroup = false;
+		groupItem = null;
 	}
 	
+	/**
+	 * Marks the item in the robot's hand as carried by a group
+	 */
 	public void setInGroup() {
 		inGroup = true;
+		groupItem = deliveryItem;
 	}
 
 }
@@ -0,0 +1,325 @@
+package automail;
+
+import java.util.Arrays;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+
+/**
+ * Keeps the state of every robot in a run in primitive arrays, indexed by the robot's position in
+ * the fleet, and steps the whole fleet in one loop. The robots the mail pool works with are handles
+ * onto these arrays, so the pool cannot tell the difference. Each robot's items are held in its own
+ * slots of the hand and tube arrays, which are cleared as the items are delivered or returned, so
+ * the fleet only ever holds what it is carrying. Each robot behaves exactly as a Robot would.
+ */
+public class RobotFleet {
+
+	/** The states, as their RobotState ordinals */
+	private static final byte DELIVERING = (byte) Robot.RobotState.DELIVERING.ordinal();
+	private static final byte WAITING = (byte) Robot.RobotState.WAITING.ordinal();
+	private static final byte RETURNING = (byte) Robot.RobotState.RETURNING.ordinal();
+	private static final Robot.RobotState[] STATES = Robot.RobotState.values();
+
+	private final SimulationContext context;
+	private final IMailDelivery delivery;
+	private final IMailPool mailPool;
+	private final Handle[] handles;
+
+	private final int[] id;
+	private final byte[] state;
+	private final int[] currentFloor;
+	private final int[] destinationFloor;
+	private final int[] deliveryCounter;
+	private final int[] inGroupStep;
+	private final boolean[] receivedDispatch;
+	private final boolean[] robotDelivering;
+	private final boolean[] inGroup;
+	/** The item in each robot's hand, or null */
+	private final MailItem[] hand;
+	/** The items in each robot's tube, tubeCapacity slots per robot, in the order they will be delivered */
+	private final MailItem[] tube;
+	private final int[] tubeCount;
+	private final int tubeCapacity;
+
+	/** Where planStops works, one trip at a time */
+	private final MailItem[] stops;
+
+	/**
+	 * Creates the robots in the mailroom, numbered in order from the run's robot ids
+	 * @param context the simulation run the robots belong to
+	 * @param delivery governs the final delivery
+	 * @param mailPool is the source of mail items
+	 * @param numRobots the size of the fleet
+	 */
+	public RobotFleet(SimulationContext context, IMailDelivery delivery, IMailPool mailPool, int numRobots) {
+		this.context = context;
+		this.delivery = delivery;
+		this.mailPool = mailPool;
+		handles = new Handle[numRobots];
+		id = new int[numRobots];
+		state = new byte[numRobots];
+		currentFloor = new int[numRobots];
+		destinationFloor = new int[numRobots];
+		deliveryCounter = new int[numRobots];
+		inGroupStep = new int[numRobots];
+		receivedDispatch = new boolean[numRobots];
+		robotDelivering = new boolean[numRobots];
+		inGroup = new boolean[numRobots];
+		hand = new MailItem[numRobots];
+		tubeCapacity = context.tubeCapacity;
+		tube = new MailItem[numRobots * tubeCapacity];
+		tubeCount = new int[numRobots];
+		stops = new MailItem[tubeCapacity + 1];
+		for (int i = 0; i < numRobots; i++) {
+			handles[i] = new Handle(this, i);
+			id[i] = handles[i].getID();
+			state[i] = RETURNING;
+			currentFloor[i] = Building.MAILROOM_LOCATION;
+		}
+	}
+
+	/**
+	 * @return the robots, for the mail pool to load and dispatch
+	 */
+	public Robot[] robots() {
+		return handles;
+	}
+
+	/**
+	 * Steps every robot in turn, as calling Robot.step() on each would
+	 * @throws ExcessiveDeliveryException if a robot delivers more than the capacity of its tube without refilling
+	 */
+	public void step() throws ExcessiveDeliveryException {
+		for (int i = 0; i < id.length; i++) step(i);
+	}
+
+	private void step(int i) throws ExcessiveDeliveryException {
+		if (state[i] == RETURNING) {
+			if (currentFloor[i] != Building.MAILROOM_LOCATION) {
+				moveTowards(i, Building.MAILROOM_LOCATION);
+				return;
+			}
+			for (int t = i * tubeCapacity; t < i * tubeCapacity + tubeCount[i]; t++) {
+				MailItem item = tube[t];
+				tube[t] = null;
+				mailPool.addToPool(item);
+				if (context.trace.enabled(TraceLevel.FULL)) {
+					context.trace.trace(TraceLevel.FULL, Robot.RETURN_FORMAT, context.clock.Time(), item);
+				}
+				if (context.binaryTrace != null) context.binaryTrace.returned(context.clock.Time(), id[i], item);
+			}
+			tubeCount[i] = 0;
+			mailPool.registerWaiting(handles[i]);
+			changeState(i, WAITING);
+		}
+		if (state[i] == WAITING) {
+			if (!isEmpty(i) && receivedDispatch[i]) {
+				receivedDispatch[i] = false;
+				deliveryCounter[i] = 0;
+				planStops(i);
+				destinationFloor[i] = hand[i].getDestFloor();
+				changeState(i, DELIVERING);
+			}
+		} else if (state[i] == DELIVERING) {
+			if (currentFloor[i] != destinationFloor[i]) {
+				moveTowards(i, destinationFloor[i]);
+				return;
+			}
+			// only one of a group delivers the item
+			if (robotDelivering[i] || hand[i].getWeight() <= Robot.INDIVIDUAL_MAX_WEIGHT) {
+				delivery.deliver(hand[i]);
+				inGroup[i] = false;
+				robotDelivering[i] = false;
+			}
+			hand[i] = null;
+			deliveryCounter[i]++;
+			if (deliveryCounter[i] > tubeCapacity + 1) {  // Implies a simulation bug
+				throw new ExcessiveDeliveryException();
+			}
+			if (tubeCount[i] == 0) {
+				changeState(i, RETURNING);
+			} else {
+				int first = i * tubeCapacity;
+				hand[i] = tube[first];
+				System.arraycopy(tube, first + 1, tube, first, --tubeCount[i]);
+				tube[first + tubeCount[i]] = null;
+				destinationFloor[i] = hand[i].getDestFloor();
+				changeState(i, DELIVERING);
+			}
+		}
+	}
+
+	/**
+	 * Puts a robot's hand and tube in the order it will deliver them, as Robot does
+	 */
+	private void planStops(int i) {
+		boolean sweep = context.sweepRouting && !inGroup[i];
+		if (hand[i] == null || tubeCount[i] < (sweep ? 1 : 2)) return;
+		int first = i * tubeCapacity;
+		int count = tubeCount[i] + 1;
+		stops[0] = hand[i];
+		System.arraycopy(tube, first, stops, 1, count - 1);
+		// a fleet is only ever Standard robots, which move a floor a tick
+		Robot.planStops(stops, count, sweep, context.clock.Time(), 1);
+		hand[i] = stops[0];
+		System.arraycopy(stops, 1, tube, first, count - 1);
+		Arrays.fill(stops, 0, count, null);
+	}
+
+	private void moveTowards(int i, int destination) {
+		//reduces speed of movement by 1/3 when carrying in groups
+		if (inGroup[i]) {
+			if (++inGroupStep[i] < 3) return;
+			inGroupStep[i] = 0;
+		}
+		currentFloor[i] += (currentFloor[i] < destination) ? 1 : -1;
+	}
+
+	/**
+	 * @see Robot#travelSteps()
+	 */
+	int travelSteps(int i) {
+		if (state[i] == RETURNING) return stepsTo(i, Building.MAILROOM_LOCATION);
+		if (state[i] == DELIVERING) return stepsTo(i, destinationFloor[i]);
+		return (!isEmpty(i) && receivedDispatch[i]) ? 0 : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Moves every robot as if step() had been called the given number of times
+	 * @param steps no more than the travelSteps() of any robot
+	 */
+	public void travel(int steps) {
+		for (int i = 0; i < id.length; i++) travel(i, steps);
+	}
+
+	private void travel(int i, int steps) {
+		if (steps == 0 || state[i] == WAITING) return;
+		int destination = (state[i] == RETURNING) ? Building.MAILROOM_LOCATION : destinationFloor[i];
+		int floors = steps;
+		if (inGroup[i]) {
+			floors = (inGroupStep[i] + steps) / 3;
+			inGroupStep[i] = (inGroupStep[i] + steps) % 3;
+		}
+		currentFloor[i] += (currentFloor[i] < destination) ? floors : -floors;
+	}
+
+	private int stepsTo(int i, int destination) {
+		int floors = Math.abs(destination - currentFloor[i]);
+		return inGroup[i] ? 3 * floors - inGroupStep[i] : floors;
+	}
+
+	private boolean isEmpty(int i) {
+		return hand[i] == null && tubeCount[i] == 0;
+	}
+
+	private int tubeCount(int i) {
+		return tubeCount[i];
+	}
+
+	private void changeState(int i, byte nextState) {
+		boolean tracing = context.trace.enabled(TraceLevel.FULL);
+		BinaryTraceWriter binaryTrace = context.binaryTrace;
+		if (state[i] != nextState) {
+			if (tracing) {
+				context.trace.trace(TraceLevel.FULL, Robot.STATE_CHANGE_FORMAT, context.clock.Time(),
+						Robot.idTube(id[i], tubeCount(i)), STATES[state[i]], STATES[nextState]);
+			}
+			if (binaryTrace != null) binaryTrace.stateChange(context.clock.Time(), id[i], tubeCount(i), STATES[state[i]], STATES[nextState]);
+		}
+		state[i] = nextState;
+		if (nextState == DELIVERING) {
+			if (tracing) {
+				context.trace.trace(TraceLevel.FULL, Robot.DISPATCH_FORMAT, context.clock.Time(),
+						Robot.idTube(id[i], tubeCount(i)), hand[i]);
+			}
+			if (binaryTrace != null) binaryTrace.dispatch(context.clock.Time(), id[i], tubeCount(i), hand[i]);
+		}
+	}
+
+	/**
+	 * A robot of the fleet, as the mail pool sees it
+	 */
+	private static class Handle extends Robot {
+
+		private final RobotFleet fleet;
+		private final int i;
+
+		Handle(RobotFleet fleet, int i) {
+			super(fleet.context, fleet.delivery, fleet.mailPool);
+			this.fleet = fleet;
+			this.i = i;
+		}
+
+		@Override
+		public void dispatch() {
+			fleet.receivedDispatch[i] = true;
+		}
+
+		@Override
+		public void step() throws ExcessiveDeliveryException {
+			fleet.step(i);
+		}
+
+		@Override
+		public RobotState getState() {
+			return STATES[fleet.state[i]];
+		}
+
+		@Override
+		public int travelSteps() {
+			return fleet.travelSteps(i);
+		}
+
+		@Override
+		public void travel(int steps) {
+			fleet.travel(i, steps);
+		}
+
+		@Override
+		public MailItem getTube() {
+			return fleet.tubeCount[i] == 0 ? null : fleet.tube[i * fleet.tubeCapacity];
+		}
+
+		@Override
+		public int tubeSpace() {
+			return fleet.tubeCapacity - fleet.tubeCount[i];
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return fleet.isEmpty(i);
+		}
+
+		@Override
+		public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
+			assert(fleet.hand[i] == null);
+			fleet.hand[i] = mailItem;
+			if (mailItem.getWeight() > TRIPLE_MAX_WEIGHT) throw new ItemTooHeavyException();
+		}
+
+		@Override
+		public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
+			assert(fleet.tubeCount[i] < fleet.tubeCapacity);
+			fleet.tube[i * fleet.tubeCapacity + fleet.tubeCount[i]++] = mailItem;
+			if (mailItem.getWeight() > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
+		}
+
+		@Override
+		public void setRobotDelivering() {
+			fleet.robotDelivering[i] = true;
+		}
+
+		@Override
+		public void resetPriority() {
+			fleet.hand[i] = null;
+			fleet.robotDelivering[i] = false;
+			fleet.inGroup[i] = false;
+		}
+
+		@Override
+		public void setInGroup() {
+			fleet.inGroup[i] = true;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package automail;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * What a kind of robot can carry and how fast it moves. Robots lists the fleet either as a number
+ * of Standard robots or as types separated by commas, each optionally followed by *count, such as
+ * "Standard*6,Big*2". Standard, Big and Weak are built in with a tube of Tube_Capacity; any type,
+ * built in or not, can be given as Robot_Type.name=capacity,speed,tube.
+ */
+public class RobotType {
+
+	public static final String STANDARD = "Standard";
+
+	public final String name;
+	/** The heaviest item the robot carries on its own, in its hand or its tube */
+	public final int capacity;
+	/** How many floors the robot moves in a tick when it is not carrying with a group */
+	public final int speed;
+	/** How many items fit in its tube */
+	public final int tubeCapacity;
+
+	public RobotType(String name, int capacity, int speed, int tubeCapacity) {
+		if (capacity <= 0 || speed <= 0 || tubeCapacity < 0) {
+			throw new IllegalArgumentException("Robot type " + name + " needs a positive capacity and speed");
+		}
+		this.name = name;
+		this.capacity = capacity;
+		this.speed = speed;
+		this.tubeCapacity = tubeCapacity;
+	}
+
+	/**
+	 * @param tubeCapacity the Tube_Capacity of the run
+	 * @return the robot the simulation has always had
+	 */
+	public static RobotType standard(int tubeCapacity) {
+		return new RobotType(STANDARD, Robot.INDIVIDUAL_MAX_WEIGHT, 1, tubeCapacity);
+	}
+
+	/**
+	 * @return whether robots of this type behave exactly as standard(tubeCapacity)
+	 */
+	public boolean isStandard(int tubeCapacity) {
+		return capacity == Robot.INDIVIDUAL_MAX_WEIGHT && speed == 1 && this.tubeCapacity == tubeCapacity;
+	}
+
+	/**
+	 * @param name the name of a type
+	 * @param properties where the type may be defined as Robot_Type.name
+	 * @param tubeCapacity the tube of the built in types
+	 * @return the type
+	 */
+	public static RobotType named(String name, Properties properties, int tubeCapacity) {
+		String spec = properties.getProperty("Robot_Type." + name);
+		if (spec != null) {
+			String[] fields = spec.split(",");
+			if (fields.length != 3) {
+				throw new IllegalArgumentException("Robot_Type." + name + " should be capacity,speed,tube: " + spec);
+			}
+			return new RobotType(name, Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim()),
+					Integer.parseInt(fields[2].trim()));
+		}
+		switch (name) {
+		case STANDARD:
+			return standard(tubeCapacity);
+		case "Big":
+			return new RobotType(name, Robot.TRIPLE_MAX_WEIGHT, 1, tubeCapacity);
+		case "Weak":
+			return new RobotType(name, 1000, 1, tubeCapacity);
+		default:
+			throw new IllegalArgumentException("Unknown robot type " + name + "; define it as Robot_Type." + name + "=capacity,speed,tube");
+		}
+	}
+
+	/**
+	 * @param robots the Robots property
+	 * @param properties where types may be defined
+	 * @param tubeCapacity the tube of the built in types
+	 * @return the type of each robot, in the order they are created
+	 */
+	public static RobotType[] fleet(String robots, Properties properties, int tubeCapacity) {
+		robots = robots.trim();
+		if (robots.matches("\\d+")) return fleet(Integer.parseInt(robots), tubeCapacity);
+		RobotType[] fleet = new RobotType[0];
+		for (String entry : robots.split(",")) {
+			String[] parts = entry.trim().split("\\*");
+			RobotType type = named(parts[0].trim(), properties, tubeCapacity);
+			int count = (parts.length > 1) ? Integer.parseInt(parts[1].trim()) : 1;
+			int from = fleet.length;
+			fleet = Arrays.copyOf(fleet, from + count);
+			Arrays.fill(fleet, from, fleet.length, type);
+		}
+		return fleet;
+	}
+
+	/**
+	 * @return a fleet of the given number of Standard robots
+	 */
+	public static RobotType[] fleet(int robots, int tubeCapacity) {
+		RobotType[] fleet = new RobotType[robots];
+		Arrays.fill(fleet, standard(tubeCapacity));
+		return fleet;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s(%dg, %d floors/tick, tube %d)", name, capacity, speed, tubeCapacity);
+	}
+}
@@ -5,123 +5,189 @@ import exceptions.ItemTooHeavyException;
 import exceptions.MailAlreadyDeliveredException;
 import strategies.Automail;
 import strategies.IMailPool;
-import strategies.MailPool;
+import strategies.MailPoolRegistry;
 
-import java.io.FileReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Properties;
 
 /**
- * This class simulates the behaviour of AutoMail
+ * This class simulates the behaviour of AutoMail.
+ * Each Simulation is one run with its own clock, building and mail, so runs can share a JVM.
  */
 public class Simulation {	
 	
-    /** Constant for the mail generator */
-    private static int MAIL_TO_CREATE;
-    private static int MAIL_MAX_WEIGHT;
-    
+    /** The log line for a delivery */
+    static final String DELIVERED_FORMAT = "T: %3d > Delivered(%4d) [%s]%n";
+
+    private final Configuration configuration;
+    private final SimulationContext context;
+    /** Used to see whether a seed is initialized or not */
+    private final HashMap<Boolean, Integer> seedMap;
 
-    private static ArrayList<MailItem> MAIL_DELIVERED;
-    private static double total_score = 0;
+    private final DeliveryLedger mailDelivered;
+    /** How long items waited and, when tracked, what the pool and robots did */
+    private final DeliveryMetrics metrics = new DeliveryMetrics();
+    private double total_score = 0;
+
+    /**
+     * @param configuration the settings for the run
+     * @param seed the seed for generating mail, or null to randomise
+     * @param trace where the events of the run are reported
+     */
+    public Simulation(Configuration configuration, Integer seed, ITraceSink trace) {
+    	this(configuration, seed, trace, null);
+    }
+
+    /**
+     * @param configuration the settings for the run
+     * @param seed the seed for generating mail, or null to randomise
+     * @param trace where the events of the run are reported
+     * @param binaryTrace where the events of the run are recorded in binary, or null
+     */
+    public Simulation(Configuration configuration, Integer seed, ITraceSink trace, BinaryTraceWriter binaryTrace) {
+    	this.configuration = configuration;
+    	this.context = new SimulationContext(configuration, trace, binaryTrace);
+    	this.seedMap = new HashMap<>();
+    	if (seed == null) {
+    		seedMap.put(false, 0); // so randomise
+    	} else {
+    		seedMap.put(true, seed);
+    	}
+    	this.mailDelivered = new DeliveryLedger();
+    }
 
     public static void main(String[] args) throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException {
-    	Properties automailProperties = new Properties();
-		// Default properties
-    	// automailProperties.setProperty("Robots", "Big,Careful,Standard,Weak");
-    	automailProperties.setProperty("Robots", "Standard");
-    	automailProperties.setProperty("MailPool", "strategies.SimpleMailPool");
-    	automailProperties.setProperty("Floors", "10");
-    	automailProperties.setProperty("Fragile", "false");
-    	automailProperties.setProperty("Mail_to_Create", "80");
-    	automailProperties.setProperty("Last_Delivery_Time", "100");
-
-    	// Read properties
-		FileReader inStream = null;
-		try {
-			inStream = new FileReader("automail.properties");
-			automailProperties.load(inStream);
-		} finally {
-			 if (inStream != null) {
-	                inStream.close();
-	            }
+    	Properties automailProperties = Configuration.loadProperties("automail.properties");
+    	Configuration configuration = new Configuration(automailProperties);
+    	ITraceSink trace = (configuration.traceFile == null)
+    			? new PrintStreamTraceSink(configuration.traceLevel, System.out)
+    			: new FileTraceSink(configuration.traceLevel, configuration.traceFile);
+		assert(configuration.robots > 0);
+
+        /** Read the first argument and save it as a seed if it exists - overrides property */
+        Integer seed = (args.length == 0) ? configuration.seed : Integer.valueOf(args[0]);
+        printSettings(trace, configuration, seed);
+        BinaryTraceWriter binaryTrace = (configuration.binaryTraceFile == null) ? null
+        		: new BinaryTraceWriter(configuration.binaryTraceFile, configuration, seed);
+
+        Simulation simulation = new Simulation(configuration, seed, trace, binaryTrace);
+        DeliveryMetrics metrics = simulation.getMetrics();
+        if (configuration.metricsFile != null) metrics.track();
+        if (configuration.metricsSampleFile != null) {
+        	metrics.sampleTo(new BufferedWriter(new FileWriter(configuration.metricsSampleFile)), configuration.metricsInterval);
+        }
+        try {
+        	simulation.run();
+		} catch (ExcessiveDeliveryException|ItemTooHeavyException e) {
+			trace.close();
+			if (binaryTrace != null) binaryTrace.close();
+			metrics.close();
+			e.printStackTrace();
+			System.out.println("Simulation unable to complete.");
+			System.exit(0);
 		}
+        simulation.printResults();
+        metrics.close();
+        if (configuration.metricsFile != null) {
+        	metrics.export(configuration.metricsFile, simulation.getFinalTime(), simulation.getTotalScore());
+        }
+        trace.close();
+        if (binaryTrace != null) {
+        	binaryTrace.end(simulation.getFinalTime());
+        	binaryTrace.close();
+        }
+    }
+
+    /**
+     * Reports the settings of a run
+     */
+    static void printSettings(ITraceSink trace, Configuration configuration, Integer seed) {
+        trace.trace(TraceLevel.SUMMARY, "Floors: %5d%n", configuration.floors);
+        trace.trace(TraceLevel.SUMMARY, "Fragile: %5b%n", configuration.fragile);
+        trace.trace(TraceLevel.SUMMARY, "Mail_to_Create: %5d%n", configuration.mailToCreate);
+        trace.trace(TraceLevel.SUMMARY, "Mail_Max_Weight: %5d%n", configuration.mailMaxWeight);
+        trace.trace(TraceLevel.SUMMARY, "Last_Delivery_Time: %5d%n", configuration.lastDeliveryTime);
+        trace.trace(TraceLevel.SUMMARY, "Robots: %d%n", configuration.robots);
+        trace.trace(TraceLevel.SUMMARY, "Seed: %s%n", seed == null ? "null" : seed.toString());
+    }
 
-		//Seed
-		String seedProp = automailProperties.getProperty("Seed");
-		// Floors
-		Building.FLOORS = Integer.parseInt(automailProperties.getProperty("Floors"));
-        System.out.printf("Floors: %5d%n", Building.FLOORS);
-        // Fragile
-        boolean fragile = Boolean.parseBoolean(automailProperties.getProperty("Fragile"));
-        System.out.printf("Fragile: %5b%n", fragile);
-		// Mail_to_Create
-		MAIL_TO_CREATE = Integer.parseInt(automailProperties.getProperty("Mail_to_Create"));
-        System.out.printf("Mail_to_Create: %5d%n", MAIL_TO_CREATE);
-        // Mail_to_Create
-     	MAIL_MAX_WEIGHT = Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight"));
-        System.out.printf("Mail_Max_Weight: %5d%n", MAIL_MAX_WEIGHT);
-		// Last_Delivery_Time
-		Clock.LAST_DELIVERY_TIME = Integer.parseInt(automailProperties.getProperty("Last_Delivery_Time"));
-        System.out.printf("Last_Delivery_Time: %5d%n", Clock.LAST_DELIVERY_TIME);
-		// Robots
-		int robots = Integer.parseInt(automailProperties.getProperty("Robots"));
-		System.out.print("Robots: "); System.out.println(robots);
-		assert(robots > 0);
+    /**
+     * Runs the simulation until all the mail has been delivered
+     * @throws ExcessiveDeliveryException if a robot delivers more than the capacity of its tube
+     * @throws ItemTooHeavyException if a robot is given an item it cannot carry
+     * @throws IOException if the workload to replay cannot be read
+     */
+    public void run() throws ExcessiveDeliveryException, ItemTooHeavyException, IOException {
 		// MailPool
-		IMailPool mailPool = new MailPool(robots);
-
-		// End properties
-		
-        MAIL_DELIVERED = new ArrayList<MailItem>();
-                
-        /** Used to see whether a seed is initialized or not */
-        HashMap<Boolean, Integer> seedMap = new HashMap<>();
-        
-        /** Read the first argument and save it as a seed if it exists */
-        if (args.length == 0 ) { // No arg
-        	if (seedProp == null) { // and no property
-        		seedMap.put(false, 0); // so randomise
-        	} else { // Use property seed
-        		seedMap.put(true, Integer.parseInt(seedProp));
-        	}
-        } else { // Use arg seed - overrides property
-        	seedMap.put(true, Integer.parseInt(args[0]));
+		IMailPool mailPool = MailPoolRegistry.create(configuration.mailPool, context, configuration);
+        Automail automail = new Automail(context, mailPool, new ReportDelivery(), configuration.robotTypes, configuration.arrayFleet);
+        MailGenerator mailGenerator;
+        if (configuration.workloadFile != null) {
+        	mailGenerator = WorkloadReplay.open(context, configuration.workloadFile, configuration.mailMaxWeight, automail.mailPool);
+        } else if (configuration.streamingMail) {
+        	mailGenerator = new StreamingMailGenerator(context, configuration.mailToCreate, configuration.mailMaxWeight, automail.mailPool, seedMap);
+        } else {
+        	mailGenerator = new MailGenerator(context, configuration.mailToCreate, configuration.mailMaxWeight, automail.mailPool, seedMap);
+        }
+        ParallelRobotStepper stepper = (configuration.robotThreads > 1)
+        		? new ParallelRobotStepper(automail.robots, configuration.robotThreads) : null;
+        try {
+        	run(automail, mailGenerator, stepper);
+        } finally {
+        	if (stepper != null) stepper.close();
+        	if (mailGenerator instanceof WorkloadReplay) ((WorkloadReplay) mailGenerator).close();
         }
-        Integer seed = seedMap.get(true);
-        System.out.printf("Seed: %s%n", seed == null ? "null" : seed.toString());
-        Automail automail = new Automail(mailPool, new ReportDelivery(), robots);
-        MailGenerator mailGenerator = new MailGenerator(MAIL_TO_CREATE, MAIL_MAX_WEIGHT, automail.mailPool, seedMap);
-        
+    }
+
+    private void run(Automail automail, MailGenerator mailGenerator, ParallelRobotStepper stepper) throws ExcessiveDeliveryException, ItemTooHeavyException {
+    	Clock clock = context.clock;
         /** Initiate all the mail */
         mailGenerator.generateAllMail();
+        EventScheduler scheduler = configuration.eventDriven ? new EventScheduler(automail, mailGenerator) : null;
         // PriorityMailItem priority;  // Not used in this version
-        while(MAIL_DELIVERED.size() != mailGenerator.MAIL_TO_CREATE) {
-        	// System.out.printf("Delivered: %4d; Created: %4d%n", MAIL_DELIVERED.size(), mailGenerator.MAIL_TO_CREATE);
+        while(mailDelivered.size() != mailGenerator.MAIL_TO_CREATE) {
+        	// System.out.printf("Delivered: %4d; Created: %4d%n", mailDelivered.size(), mailGenerator.MAIL_TO_CREATE);
             mailGenerator.step();
-            try {
-                automail.mailPool.step();
-				for (int i=0; i<robots; i++) automail.robots[i].step();
-			} catch (ExcessiveDeliveryException|ItemTooHeavyException e) {
-				e.printStackTrace();
-				System.out.println("Simulation unable to complete.");
-				System.exit(0);
+            automail.mailPool.step();
+			if (stepper != null) {
+				stepper.step();
+			} else if (automail.fleet != null) {
+				automail.fleet.step();
+			} else {
+				for (int i=0; i<automail.robots.length; i++) automail.robots[i].step();
 			}
-            Clock.Tick();
+            if (scheduler == null || mailDelivered.size() == mailGenerator.MAIL_TO_CREATE) {
+            	if (metrics.isTracking()) metrics.tick(clock.Time(), 1, automail.mailPool.size(), automail.robots);
+            	clock.Tick();
+            } else {
+            	/** Skip ahead to the next tick at which something happens */
+            	scheduler.update(clock.Time());
+            	/** Samples fall on the same ticks as when every tick is stepped */
+            	int next = Math.min(scheduler.next(clock.Time()), metrics.nextSampleAfter(clock.Time()));
+            	if (metrics.isTracking()) metrics.tick(clock.Time(), next - clock.Time(), automail.mailPool.size(), automail.robots);
+            	scheduler.skip(next - clock.Time() - 1);
+            	clock.Tick(next - clock.Time());
+            }
         }
-        printResults();
     }
     
-    static class ReportDelivery implements IMailDelivery {
+    class ReportDelivery implements IMailDelivery {
     	
     	/** Confirm the delivery and calculate the total score */
     	public void deliver(MailItem deliveryItem){
-    		if(!MAIL_DELIVERED.contains(deliveryItem)){
-    			MAIL_DELIVERED.add(deliveryItem);
-                System.out.printf("T: %3d > Delivered(%4d) [%s]%n", Clock.Time(), MAIL_DELIVERED.size(), deliveryItem.toString());
+    		if(mailDelivered.record(deliveryItem)){
+                if (context.trace.enabled(TraceLevel.FULL)) {
+                	context.trace.trace(TraceLevel.FULL, DELIVERED_FORMAT, context.clock.Time(), mailDelivered.size(), deliveryItem);
+                }
+                if (context.binaryTrace != null) {
+                	context.binaryTrace.delivered(context.clock.Time(), mailDelivered.size(), deliveryItem);
+                }
     			// Calculate delivery score
-    			total_score += calculateDeliveryScore(deliveryItem);
+    			total_score += deliveryScore(context.clock.Time(), deliveryItem);
+    			metrics.delivered(context.clock.Time(), deliveryItem);
     		}
     		else{
     			try {
@@ -134,7 +200,12 @@ public class Simulation {
 
     }
     
-    private static double calculateDeliveryScore(MailItem deliveryItem) {
+    /**
+     * @param time the time of delivery
+     * @param deliveryItem the item delivered
+     * @return the score for delivering the item at that time
+     */
+    static double deliveryScore(int time, MailItem deliveryItem) {
     	// Penalty for longer delivery times
     	final double penalty = 1.2;
     	double priority_weight = 0;
@@ -142,12 +213,47 @@ public class Simulation {
     	if(deliveryItem instanceof PriorityMailItem){
     		priority_weight = ((PriorityMailItem) deliveryItem).getPriorityLevel();
     	}
-        return Math.pow(Clock.Time() - deliveryItem.getArrivalTime(),penalty)*(1+Math.sqrt(priority_weight));
+        return Math.pow(time - deliveryItem.getArrivalTime(),penalty)*(1+Math.sqrt(priority_weight));
+    }
+
+    /**
+     * @return the score of the run so far
+     */
+    public double getTotalScore() {
+    	return total_score;
+    }
+
+    /**
+     * @return the time on the run's clock, which is the final delivery time once run() returns
+     */
+    public int getFinalTime() {
+    	return context.clock.Time();
+    }
+
+    /**
+     * @return how long the items delivered in the run waited
+     */
+    public DelayHistogram getDelays() {
+    	return metrics.getDelays();
+    }
+
+    /**
+     * @return the metrics of the run
+     */
+    public DeliveryMetrics getMetrics() {
+    	return metrics;
+    }
+
+    public void printResults(){
+    	printResults(context.trace, context.clock.Time(), total_score);
     }
 
-    public static void printResults(){
-        System.out.println("T: "+Clock.Time()+" | Simulation complete!");
-        System.out.println("Final Delivery time: "+Clock.Time());
-        System.out.printf("Final Score: %.2f%n", total_score);
+    /**
+     * Reports the results of a run
+     */
+    static void printResults(ITraceSink trace, int time, double score){
+        trace.trace(TraceLevel.SUMMARY, "T: %d | Simulation complete!%n", time);
+        trace.trace(TraceLevel.SUMMARY, "Final Delivery time: %d%n", time);
+        trace.trace(TraceLevel.SUMMARY, "Final Score: %.2f%n", score);
     }
 }
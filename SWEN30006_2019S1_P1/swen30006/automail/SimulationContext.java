@@ -0,0 +1,50 @@
+package automail;
+
+/**
+ * Holds everything belonging to a single simulation run, so that several runs can go on
+ * side by side in one JVM. Each run must only be stepped by one thread at a time.
+ */
+public class SimulationContext {
+
+	public final Clock clock;
+	public final Building building;
+	/** Where the events of this run are reported */
+	public final ITraceSink trace;
+	/** Where the events of this run are recorded in binary, or null */
+	public final BinaryTraceWriter binaryTrace;
+	/** How many items fit in each robot's tube */
+	public final int tubeCapacity;
+	/** Whether robots may deliver a trip in one sweep up the building rather than hand first */
+	public final boolean sweepRouting;
+
+	private int mailCount = 0;
+	private int robotCount = 0;
+
+	/**
+	 * @param configuration the settings for the run
+	 * @param trace where the events of this run are reported
+	 * @param binaryTrace where the events of this run are recorded in binary, or null
+	 */
+	public SimulationContext(Configuration configuration, ITraceSink trace, BinaryTraceWriter binaryTrace) {
+		this.clock = new Clock(configuration.lastDeliveryTime);
+		this.building = new Building(configuration.floors);
+		this.trace = trace;
+		this.binaryTrace = binaryTrace;
+		this.tubeCapacity = configuration.tubeCapacity;
+		this.sweepRouting = configuration.sweepRouting;
+	}
+
+	/**
+	 * @return the id for the next mail item created in this run
+	 */
+	public int nextMailId() {
+		return mailCount++;
+	}
+
+	/**
+	 * @return the id for the next robot created in this run
+	 */
+	public int nextRobotId() {
+		return robotCount++;
+	}
+}
@@ -0,0 +1,127 @@
+package automail;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import strategies.IMailPool;
+
+/**
+ * Generates the mail one tick at a time instead of all of it before the first tick, so that only
+ * the items arriving at the current tick are ever held. How many items arrive at each tick is
+ * drawn in tick order from one random stream, and the items themselves from a stream seeded by
+ * the tick, so a seed gives the same workload however the run is stepped. The number of items
+ * and their distributions are the same as MailGenerator's, but not the items themselves; use
+ * MailGenerator to reproduce the workload of an existing seed.
+ */
+public class StreamingMailGenerator extends MailGenerator {
+
+	/** Above this many expected arrivals a tick's count is drawn from the normal approximation */
+	private static final double INVERSION_LIMIT = 30.0;
+
+	/** Seeds the per tick streams */
+	private final long tickSeed;
+	/** Draws how many items arrive at each tick */
+	private final Random counts;
+	/** The items whose arrival tick has not been drawn yet */
+	private int unscheduled;
+	/** The last tick whose count has been drawn */
+	private int countedTick;
+	/** The next tick at which items arrive, or -1 if it has not been drawn yet */
+	private int nextTick;
+	private int nextCount;
+
+	/**
+	 * Constructor for streaming mail generation
+	 * @param context the simulation run the mail belongs to
+	 * @param mailToCreate roughly how many mail items to create
+	 * @param mailPool where mail items go on arrival
+	 * @param seed random seed for generating mail
+	 */
+	public StreamingMailGenerator(SimulationContext context, int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed) {
+		super(context, mailToCreate, mailMaxWeight, mailPool, seed);
+		this.tickSeed = random.nextLong();
+		this.counts = new Random(random.nextLong());
+		this.unscheduled = MAIL_TO_CREATE;
+		this.countedTick = 0;
+		this.nextTick = -1;
+	}
+
+	/**
+	 * Nothing is generated up front
+	 */
+	@Override
+	public void generateAllMail() {
+	}
+
+	@Override
+	public int nextArrivalTime(int time) {
+		int next = peek();
+		return next > time ? next : -1;
+	}
+
+	@Override
+	public PriorityMailItem step() {
+		int time = context.clock.Time();
+		if (peek() != time) return null;
+		nextTick = -1;
+
+		PriorityMailItem priority = null;
+		Random random = new Random(tickSeed ^ (time * 0x9E3779B97F4A7C15L));
+		for (int i = 0; i < nextCount; i++) {
+			MailItem mailItem;
+			int dest_floor = generateDestinationFloor(random);
+			int priority_level = generatePriorityLevel(random);
+			int weight = generateWeight(random);
+			// At most one priority item per tick, skewed towards non priority mail as before
+			if (random.nextInt(6) > 0 || priority != null) {
+				mailItem = new MailItem(context.nextMailId(), dest_floor, time, weight);
+			} else {
+				priority = new PriorityMailItem(context.nextMailId(), dest_floor, time, weight, priority_level);
+				mailItem = priority;
+			}
+			arrive(mailItem);
+		}
+		return priority;
+	}
+
+	/**
+	 * Draws tick counts until one with arrivals turns up
+	 * @return the next tick at which items arrive, or -1 if there are none left
+	 */
+	private int peek() {
+		while (nextTick == -1 && countedTick < context.clock.LAST_DELIVERY_TIME) {
+			countedTick++;
+			// Each unscheduled item is equally likely to arrive at any of the ticks left
+			int count = binomial(counts, unscheduled, 1.0 / (context.clock.LAST_DELIVERY_TIME - countedTick + 1));
+			if (count > 0) {
+				unscheduled -= count;
+				nextTick = countedTick;
+				nextCount = count;
+			}
+		}
+		return nextTick;
+	}
+
+	/**
+	 * @return a binomially distributed count of n trials with probability p, by inversion when the
+	 * mean is small and by the normal approximation when it is large
+	 */
+	private static int binomial(Random random, int n, double p) {
+		if (p >= 1.0) return n;
+		double mean = n * p;
+		if (mean >= INVERSION_LIMIT) {
+			long k = Math.round(mean + Math.sqrt(mean * (1.0 - p)) * random.nextGaussian());
+			return (int) Math.max(0, Math.min(n, k));
+		}
+		double u = random.nextDouble();
+		double pmf = Math.pow(1.0 - p, n);
+		double cdf = pmf;
+		int k = 0;
+		while (u > cdf && k < n) {
+			pmf *= (double) (n - k) / (k + 1) * p / (1.0 - p);
+			k++;
+			cdf += pmf;
+		}
+		return k;
+	}
+}
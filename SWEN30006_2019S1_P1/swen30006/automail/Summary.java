@@ -0,0 +1,59 @@
+package automail;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics over a set of values, e.g. the scores of many runs
+ */
+public class Summary {
+
+	private final double[] sorted;
+	private final double mean;
+	private final double stddev;
+
+	public Summary(double[] values) {
+		sorted = values.clone();
+		Arrays.sort(sorted);
+		double sum = 0;
+		for (double value : sorted) sum += value;
+		mean = sorted.length == 0 ? 0 : sum / sorted.length;
+		double squares = 0;
+		for (double value : sorted) squares += (value - mean) * (value - mean);
+		stddev = sorted.length < 2 ? 0 : Math.sqrt(squares / (sorted.length - 1));
+	}
+
+	/**
+	 * @return the number of values
+	 */
+	public int count() {
+		return sorted.length;
+	}
+
+	public double mean() {
+		return mean;
+	}
+
+	/**
+	 * @return the sample standard deviation
+	 */
+	public double stddev() {
+		return stddev;
+	}
+
+	/**
+	 * @param percent between 0 and 100
+	 * @return the smallest value which at least percent% of the values are no greater than
+	 */
+	public double percentile(double percent) {
+		if (sorted.length == 0) return 0;
+		int rank = (int) Math.ceil(percent / 100 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * @return the largest value, i.e. the worst case for scores and times
+	 */
+	public double max() {
+		return sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+	}
+}
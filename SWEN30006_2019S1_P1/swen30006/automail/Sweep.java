@@ -0,0 +1,144 @@
+package automail;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the simulation for every seed in a range, spread over a fork-join pool, and reports the
+ * distribution of the final scores and final delivery times.
+ * Each seed is an independent Simulation, so the results do not depend on the number of threads.
+ *
+ * Usage: Sweep firstSeed lastSeed [threads]
+ */
+public class Sweep {
+
+	/** The outcome of running one seed */
+	public static class Result {
+		public final int seed;
+		public final double score;
+		public final int finalTime;
+		/** How long the delivered items waited, or null if the run could not complete */
+		public final DelayHistogram delays;
+		/** Why the run could not complete, or null if it did */
+		public final Throwable failure;
+
+		Result(int seed, double score, int finalTime, DelayHistogram delays, Throwable failure) {
+			this.seed = seed;
+			this.score = score;
+			this.finalTime = finalTime;
+			this.delays = delays;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * Runs one simulation per seed
+	 * @param configuration the settings shared by every run
+	 * @param firstSeed the first seed to run
+	 * @param lastSeed the last seed to run, inclusive
+	 * @param threads how many runs may go at once
+	 * @return the result of each run, in seed order
+	 */
+	public static Result[] run(final Configuration configuration, int firstSeed, int lastSeed, int threads) throws InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return collect(submit(pool, configuration, firstSeed, lastSeed), firstSeed);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Queues one simulation per seed on a pool which may be running other sweeps too
+	 * @return the runs, in seed order
+	 */
+	static List<Future<Result>> submit(ForkJoinPool pool, final Configuration configuration, int firstSeed, int lastSeed) {
+		List<Future<Result>> futures = new ArrayList<Future<Result>>();
+		for (int seed = firstSeed; seed <= lastSeed; seed++) {
+			final int runSeed = seed;
+			futures.add(pool.submit(() -> runSeed(configuration, runSeed)));
+		}
+		return futures;
+	}
+
+	/**
+	 * Waits for the runs queued by submit
+	 * @return the result of each run, in seed order
+	 */
+	static Result[] collect(List<Future<Result>> futures, int firstSeed) throws InterruptedException {
+		Result[] results = new Result[futures.size()];
+		for (int i = 0; i < results.length; i++) {
+			try {
+				results[i] = futures.get(i).get();
+			} catch (ExecutionException e) {
+				results[i] = new Result(firstSeed + i, 0, 0, null, e.getCause());
+			}
+		}
+		return results;
+	}
+
+	private static Result runSeed(Configuration configuration, int seed) {
+		Simulation simulation = new Simulation(configuration, seed, PrintStreamTraceSink.OFF);
+		try {
+			simulation.run();
+		} catch (Throwable e) { // ExcessiveDeliveryException is not an Exception
+			return new Result(seed, 0, 0, null, e);
+		}
+		return new Result(seed, simulation.getTotalScore(), simulation.getFinalTime(), simulation.getDelays(), null);
+	}
+
+	/**
+	 * Prints the distribution of the scores and final delivery times of the completed runs
+	 * @param results the results of a sweep
+	 * @param out where to print
+	 */
+	public static void printSummary(Result[] results, PrintStream out) {
+		int completed = 0;
+		for (Result result : results) {
+			if (result.failure == null) completed++;
+			else out.printf("Seed %d unable to complete: %s%n", result.seed, result.failure);
+		}
+		double[] scores = new double[completed];
+		double[] times = new double[completed];
+		Result worst = null;
+		int i = 0;
+		for (Result result : results) {
+			if (result.failure != null) continue;
+			if (worst == null || result.score > worst.score) worst = result;
+			scores[i] = result.score;
+			times[i] = result.finalTime;
+			i++;
+		}
+		out.printf("Runs: %d completed of %d%n", completed, results.length);
+		if (worst == null) return;
+		out.printf("%-20s %14s %14s %14s %14s %14s %14s%n", "", "mean", "p50", "p90", "p95", "p99", "worst");
+		printRow(out, "Final Score", new Summary(scores));
+		printRow(out, "Final Delivery time", new Summary(times));
+		out.printf("Worst seed: %d%n", worst.seed);
+	}
+
+	private static void printRow(PrintStream out, String name, Summary summary) {
+		out.printf("%-20s %14.2f %14.2f %14.2f %14.2f %14.2f %14.2f%n", name, summary.mean(), summary.percentile(50),
+				summary.percentile(90), summary.percentile(95), summary.percentile(99), summary.max());
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: Sweep firstSeed lastSeed [threads]");
+			return;
+		}
+		int firstSeed = Integer.parseInt(args[0]);
+		int lastSeed = Integer.parseInt(args[1]);
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		Configuration configuration = new Configuration(Configuration.loadProperties("automail.properties"));
+
+		System.out.printf("Seeds: %d to %d on %d threads%n", firstSeed, lastSeed, threads);
+		Result[] results = run(configuration, firstSeed, lastSeed, threads);
+		printSummary(results, System.out);
+	}
+}
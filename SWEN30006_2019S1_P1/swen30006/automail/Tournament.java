@@ -0,0 +1,135 @@
+package automail;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import strategies.MailPoolRegistry;
+
+/**
+ * Runs every registered mail pool strategy, or those named, over the same seeds in the building
+ * of automail.properties, and compares their final scores and final delivery times. Every run of
+ * every strategy is queued on one fork-join pool, so the strategies run side by side. A strategy
+ * wins a seed when it scores lowest on it, and cannot win a seed it fails on. A seed on which
+ * several strategies tie for the lowest score is split evenly between them.
+ *
+ * Usage: Tournament firstSeed lastSeed [threads] [strategy...]
+ */
+public class Tournament {
+
+	/**
+	 * Runs the strategies over the seeds
+	 * @param properties the settings shared by every run, apart from MailPool
+	 * @param strategies the names of the strategies to run
+	 * @param firstSeed the first seed to run
+	 * @param lastSeed the last seed to run, inclusive
+	 * @param threads how many runs may go at once
+	 * @return the results of each strategy, in the order given, each in seed order
+	 */
+	public static Sweep.Result[][] run(Properties properties, List<String> strategies, int firstSeed, int lastSeed, int threads) throws InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<List<Future<Sweep.Result>>> runs = new ArrayList<List<Future<Sweep.Result>>>();
+			for (String strategy : strategies) {
+				Properties strategyProperties = new Properties();
+				strategyProperties.putAll(properties);
+				strategyProperties.setProperty("MailPool", strategy);
+				runs.add(Sweep.submit(pool, new Configuration(strategyProperties), firstSeed, lastSeed));
+			}
+			Sweep.Result[][] results = new Sweep.Result[strategies.size()][];
+			for (int s = 0; s < results.length; s++) results[s] = Sweep.collect(runs.get(s), firstSeed);
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Prints a row of score and final delivery time statistics for each strategy
+	 * @param strategies the names of the strategies
+	 * @param results the results of each strategy, as returned by run
+	 * @param out where to print
+	 */
+	public static void printTable(List<String> strategies, Sweep.Result[][] results, PrintStream out) {
+		int seeds = results.length == 0 ? 0 : results[0].length;
+		double[] wins = new double[strategies.size()];
+		for (int i = 0; i < seeds; i++) {
+			double lowest = Double.MAX_VALUE;
+			int tied = 0;
+			for (Sweep.Result[] result : results) {
+				if (result[i].failure != null) continue;
+				if (result[i].score < lowest) {
+					lowest = result[i].score;
+					tied = 1;
+				} else if (result[i].score == lowest) {
+					tied++;
+				}
+			}
+			for (int s = 0; s < results.length; s++) {
+				if (results[s][i].failure == null && results[s][i].score == lowest) wins[s] += 1.0 / tied;
+			}
+		}
+
+		int width = "Strategy".length();
+		for (String strategy : strategies) width = Math.max(width, strategy.length());
+		String name = "%-" + width + "s";
+		out.printf(name + " %5s %6s %14s %14s %14s %14s %9s %9s %9s %9s%n", "Strategy", "runs", "wins",
+				"score mean", "score p50", "score p95", "score worst", "time mean", "time p50", "time p95", "time worst");
+		int bestScore = -1;
+		int bestTime = -1;
+		Summary[] scores = new Summary[results.length];
+		Summary[] times = new Summary[results.length];
+		for (int s = 0; s < results.length; s++) {
+			double[] score = new double[results[s].length];
+			double[] time = new double[results[s].length];
+			int completed = 0;
+			for (Sweep.Result result : results[s]) {
+				if (result.failure != null) continue;
+				score[completed] = result.score;
+				time[completed] = result.finalTime;
+				completed++;
+			}
+			scores[s] = new Summary(Arrays.copyOf(score, completed));
+			times[s] = new Summary(Arrays.copyOf(time, completed));
+			out.printf(name + " %5d %6.2f %14.2f %14.2f %14.2f %14.2f %9.1f %9.0f %9.0f %9.0f%n", strategies.get(s), completed, wins[s],
+					scores[s].mean(), scores[s].percentile(50), scores[s].percentile(95), scores[s].max(),
+					times[s].mean(), times[s].percentile(50), times[s].percentile(95), times[s].max());
+			// only a strategy which completed every seed can be the best
+			if (completed != results[s].length) continue;
+			if (bestScore == -1 || scores[s].mean() < scores[bestScore].mean()) bestScore = s;
+			if (bestTime == -1 || times[s].mean() < times[bestTime].mean()) bestTime = s;
+		}
+		out.printf("Wins: the strategy with the lowest score on a seed; a tie is split between those tied%n");
+		if (bestScore != -1) {
+			out.printf("Lowest mean score: %s%n", strategies.get(bestScore));
+			out.printf("Earliest mean final delivery: %s%n", strategies.get(bestTime));
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: Tournament firstSeed lastSeed [threads] [strategy...]");
+			return;
+		}
+		int firstSeed = Integer.parseInt(args[0]);
+		int lastSeed = Integer.parseInt(args[1]);
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		List<String> strategies = (args.length > 3)
+				? Arrays.asList(Arrays.copyOfRange(args, 3, args.length)) : MailPoolRegistry.names();
+		Properties properties = Configuration.loadProperties("automail.properties");
+
+		System.out.printf("Seeds: %d to %d on %d threads%n", firstSeed, lastSeed, threads);
+		Sweep.Result[][] results = run(properties, strategies, firstSeed, lastSeed, threads);
+		for (int s = 0; s < results.length; s++) {
+			for (Sweep.Result result : results[s]) {
+				if (result.failure != null) System.out.printf("%s seed %d unable to complete: %s%n", strategies.get(s), result.seed, result.failure);
+			}
+		}
+		printTable(strategies, results, System.out);
+	}
+}
@@ -0,0 +1,7 @@
+package automail;
+
+/**
+ * How much of a simulation run is reported.
+ * OFF reports nothing, SUMMARY the settings and the final results, FULL every event as well.
+ */
+public enum TraceLevel { OFF, SUMMARY, FULL }
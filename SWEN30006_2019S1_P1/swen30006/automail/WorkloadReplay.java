@@ -0,0 +1,125 @@
+package automail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import strategies.IMailPool;
+
+/**
+ * Feeds the mail items of a workload written by WorkloadWriter to the mail pool as they arrive,
+ * in place of generating them. The file is mapped a chunk at a time and read in step with the
+ * clock, so only the items arriving at the current tick are ever held, however large it is.
+ *
+ * The items are numbered afresh in the order they arrive, as a run's are when it generates them,
+ * so their ids are dense and unique whatever the file holds.
+ */
+public class WorkloadReplay extends MailGenerator {
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private MappedByteBuffer buffer;
+	/** Where in the file the next mapping starts */
+	private long mapped;
+	/** The arrival time of the next record, or -1 if every record has been read */
+	private int nextArrival;
+
+	/**
+	 * Opens a workload and reads its header
+	 * @param context the simulation run the mail belongs to
+	 * @param fileName the workload file
+	 * @param mailPool where mail items go on arrival
+	 */
+	public static WorkloadReplay open(SimulationContext context, String fileName, int mailMaxWeight, IMailPool mailPool) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, WorkloadWriter.HEADER_SIZE);
+			if (header.getInt() != WorkloadWriter.MAGIC || header.getInt() != WorkloadWriter.VERSION
+					|| header.getInt() != WorkloadWriter.RECORD_SIZE) {
+				throw new IOException(fileName + " is not an automail workload");
+			}
+			int floors = header.getInt();
+			if (floors > context.building.FLOORS) {
+				throw new IOException(fileName + " has mail for " + floors + " floors but the building has " + context.building.FLOORS);
+			}
+			int mailCount = header.getInt();
+			if ((file.length() - WorkloadWriter.HEADER_SIZE) / WorkloadWriter.RECORD_SIZE != mailCount) {
+				throw new IOException(fileName + " should hold " + mailCount + " mail items");
+			}
+			return new WorkloadReplay(context, file, mailCount, mailMaxWeight, mailPool);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	private WorkloadReplay(SimulationContext context, RandomAccessFile file, int mailCount, int mailMaxWeight, IMailPool mailPool) throws IOException {
+		super(context, mailCount, mailMaxWeight, mailPool);
+		this.file = file;
+		this.channel = file.getChannel();
+		this.size = channel.size();
+		this.mapped = WorkloadWriter.HEADER_SIZE;
+		this.buffer = null;
+		readArrival();
+	}
+
+	/**
+	 * Reads the arrival time of the next record, mapping the next chunk of the file if need be
+	 */
+	private void readArrival() throws IOException {
+		if (buffer == null || buffer.remaining() < WorkloadWriter.RECORD_SIZE) {
+			if (size - mapped < WorkloadWriter.RECORD_SIZE) {
+				nextArrival = -1;
+				return;
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapped, Math.min(WorkloadWriter.CHUNK, size - mapped));
+			mapped += buffer.capacity();
+		}
+		nextArrival = buffer.getInt();
+	}
+
+	/**
+	 * The items are already in the file
+	 */
+	@Override
+	public void generateAllMail() {
+	}
+
+	@Override
+	public int nextArrivalTime(int time) {
+		return nextArrival > time ? nextArrival : -1;
+	}
+
+	@Override
+	public PriorityMailItem step() {
+		PriorityMailItem priority = null;
+		try {
+			while (nextArrival != -1 && nextArrival <= context.clock.Time()) {
+				buffer.getInt(); // the id it was recorded with
+				int id = context.nextMailId();
+				int dest_floor = buffer.getInt();
+				int weight = buffer.getInt();
+				int priority_level = buffer.getInt();
+				MailItem mailItem;
+				if (priority_level == 0) {
+					mailItem = new MailItem(id, dest_floor, nextArrival, weight);
+				} else {
+					priority = new PriorityMailItem(id, dest_floor, nextArrival, weight, priority_level);
+					mailItem = priority;
+				}
+				arrive(mailItem);
+				readArrival();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read the workload", e);
+		}
+		return priority;
+	}
+
+	public void close() throws IOException {
+		buffer = null;
+		file.close();
+	}
+}
@@ -0,0 +1,154 @@
+package automail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Properties;
+
+import strategies.CollectingMailPool;
+import strategies.IMailPool;
+
+/**
+ * Writes a workload, the mail items of a run in order of arrival, as fixed size binary records
+ * through a memory-mapped file. The file starts with a header of HEADER_SIZE bytes:
+ *
+ *   0  int  MAGIC
+ *   4  int  VERSION
+ *   8  int  RECORD_SIZE
+ *  12  int  the number of floors the items are addressed to
+ *  16  int  the number of items
+ *
+ * followed by one RECORD_SIZE record per item:
+ *
+ *   0  int  arrival time
+ *   4  int  the mail id it was recorded with, kept for reference; replay numbers the items
+ *           afresh in order of arrival
+ *   8  int  destination floor
+ *  12  int  weight
+ *  16  int  priority level, or 0 if it is not a priority item
+ *
+ * WorkloadReplay feeds the items back to a mail pool. Run as a program, this records the mail
+ * MailGenerator produces for automail.properties and a seed.
+ *
+ * Usage: WorkloadWriter workloadFile [seed]
+ */
+public class WorkloadWriter {
+
+	public static final int MAGIC = 0x414D574C; // "AMWL"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+	public static final int RECORD_SIZE = 20;
+
+	/** How much of the file is mapped at a time, a whole number of records */
+	static final int CHUNK = RECORD_SIZE * (1 << 18);
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	/** Where in the file the current mapping starts */
+	private long mapped;
+	private int count;
+	private int lastArrival;
+
+	/**
+	 * Creates the file and writes its header
+	 * @param fileName the file to write, which is overwritten
+	 * @param floors the number of floors the items are addressed to
+	 */
+	public WorkloadWriter(String fileName, int floors) throws IOException {
+		file = new RandomAccessFile(fileName, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		mapped = 0;
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + CHUNK);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(RECORD_SIZE);
+		buffer.putInt(floors);
+		buffer.putInt(0); // the number of items, filled in on close
+		buffer.position(HEADER_SIZE);
+		count = 0;
+		lastArrival = 0;
+	}
+
+	/**
+	 * Appends an item to the workload
+	 * @param mailItem the item, which must not arrive before the items already written
+	 */
+	public void add(MailItem mailItem) {
+		if (mailItem.getArrivalTime() < lastArrival) {
+			throw new IllegalArgumentException("Mail item " + mailItem.getId() + " arrives before the previous item");
+		}
+		if (buffer.remaining() < RECORD_SIZE) {
+			mapped += buffer.position();
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, mapped, CHUNK);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to extend the workload", e);
+			}
+		}
+		buffer.putInt(mailItem.getArrivalTime());
+		buffer.putInt(mailItem.getId());
+		buffer.putInt(mailItem.getDestFloor());
+		buffer.putInt(mailItem.getWeight());
+		buffer.putInt((mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+		lastArrival = mailItem.getArrivalTime();
+		count++;
+	}
+
+	/**
+	 * Records the number of items, flushes them and cuts the file down to the records written
+	 */
+	public void close() throws IOException {
+		long length = mapped + buffer.position();
+		buffer.force();
+		buffer = null;
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		header.putInt(16, count);
+		header.force();
+		channel.truncate(length);
+		file.close();
+	}
+
+	/**
+	 * Runs a mail generator through every arrival time, writing the items down instead of delivering them
+	 * @param configuration the settings to generate the mail with
+	 * @param seed the seed to generate the mail with, or null to randomise it
+	 * @param fileName the workload file to write
+	 * @return the number of items written
+	 */
+	public static int record(Configuration configuration, Integer seed, String fileName) throws IOException {
+		final WorkloadWriter writer = new WorkloadWriter(fileName, configuration.floors);
+		try {
+			SimulationContext context = new SimulationContext(configuration, PrintStreamTraceSink.OFF, null);
+			IMailPool recorder = new CollectingMailPool(mailItem -> writer.add(mailItem));
+			HashMap<Boolean, Integer> seedMap = new HashMap<>();
+			if (seed != null) seedMap.put(true, seed);
+			MailGenerator mailGenerator = configuration.streamingMail
+					? new StreamingMailGenerator(context, configuration.mailToCreate, configuration.mailMaxWeight, recorder, seedMap)
+					: new MailGenerator(context, configuration.mailToCreate, configuration.mailMaxWeight, recorder, seedMap);
+			mailGenerator.generateAllMail();
+			for (int time = mailGenerator.nextArrivalTime(0); time != -1; time = mailGenerator.nextArrivalTime(time)) {
+				context.clock.Tick(time - context.clock.Time());
+				mailGenerator.step();
+			}
+		} finally {
+			writer.close();
+		}
+		return writer.count;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: WorkloadWriter workloadFile [seed]");
+			return;
+		}
+		Properties automailProperties = Configuration.loadProperties("automail.properties");
+		Configuration configuration = new Configuration(automailProperties);
+		Integer seed = (args.length < 2) ? configuration.seed : Integer.valueOf(args[1]);
+		int count = record(configuration, seed, args[0]);
+		System.out.printf("Recorded %d mail items to %s%n", count, args[0]);
+	}
+}
@@ -2,13 +2,26 @@ package strategies;
 
 import automail.IMailDelivery;
 import automail.Robot;
+import automail.RobotFleet;
+import automail.RobotType;
+import automail.SimulationContext;
 
 public class Automail {
 	      
     public Robot[] robots;
     public IMailPool mailPool;
+    /** The robots' state when they are kept in arrays, or null when each Robot keeps its own */
+    public RobotFleet fleet;
     
-    public Automail(IMailPool mailPool, IMailDelivery delivery, int numRobots) {
+    public Automail(SimulationContext context, IMailPool mailPool, IMailDelivery delivery, int numRobots) {
+    	this(context, mailPool, delivery, numRobots, false);
+    }
+
+    public Automail(SimulationContext context, IMailPool mailPool, IMailDelivery delivery, int numRobots, boolean arrayFleet) {
+    	this(context, mailPool, delivery, RobotType.fleet(numRobots, context.tubeCapacity), arrayFleet);
+    }
+
+    public Automail(SimulationContext context, IMailPool mailPool, IMailDelivery delivery, RobotType[] robotTypes, boolean arrayFleet) {
     	// Swap between simple provided strategies and your strategies here
     	    	
     	/** Initialize the MailPool */
@@ -16,8 +29,17 @@ public class Automail {
     	this.mailPool = mailPool;
     	
     	/** Initialize robots */
-    	robots = new Robot[numRobots];
-    	for (int i = 0; i < numRobots; i++) robots[i] = new Robot(delivery, mailPool);
+    	if (arrayFleet) {
+    		//the arrays only hold what a Standard robot needs
+    		for (RobotType type : robotTypes) {
+    			if (!type.isStandard(context.tubeCapacity)) throw new IllegalArgumentException("Fleet=arrays only supports Standard robots, not " + type);
+    		}
+    		fleet = new RobotFleet(context, delivery, mailPool, robotTypes.length);
+    		robots = fleet.robots();
+    		return;
+    	}
+    	robots = new Robot[robotTypes.length];
+    	for (int i = 0; i < robotTypes.length; i++) robots[i] = new Robot(context, delivery, mailPool, robotTypes[i]);
     }
     
 }
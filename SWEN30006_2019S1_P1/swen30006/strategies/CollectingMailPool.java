@@ -0,0 +1,49 @@
+package strategies;
+
+import java.util.function.Consumer;
+
+import automail.MailItem;
+import automail.Robot;
+
+/**
+ * A mail pool which loads no robots, but hands each item on as it arrives. Used to run a mail
+ * generator on its own, to record or collect the mail it produces.
+ */
+public class CollectingMailPool implements IMailPool {
+
+	private final Consumer<MailItem> collector;
+
+	/**
+	 * @param collector what each item is handed to as it is added
+	 */
+	public CollectingMailPool(Consumer<MailItem> collector) {
+		this.collector = collector;
+	}
+
+	@Override
+	public void addToPool(MailItem mailItem) {
+		collector.accept(mailItem);
+	}
+
+	@Override
+	public void step() {
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) {
+	}
+
+	@Override
+	public boolean hasWork() {
+		return false;
+	}
+
+	/**
+	 * @return 0, as the items are handed on rather than kept
+	 */
+	@Override
+	public int size() {
+		return 0;
+	}
+
+}
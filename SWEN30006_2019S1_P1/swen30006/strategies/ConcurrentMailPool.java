@@ -0,0 +1,69 @@
+package strategies;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import automail.MailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * An IndexedMailPool which mail can be added to and robots registered with from any thread.
+ * addToPool and registerWaiting only push onto lock-free queues and never block. A single
+ * dispatcher thread calls step(), which first moves everything queued into the index in the order
+ * it was queued, then loads the waiting robots exactly as IndexedMailPool does. Driven from the
+ * Simulation loop it therefore delivers the same mail in the same order as IndexedMailPool.
+ * step(), hasWork() and size() must only be called from the dispatcher thread.
+ */
+public class ConcurrentMailPool extends IndexedMailPool {
+
+	private final ConcurrentLinkedQueue<MailItem> arrivals;
+	private final ConcurrentLinkedQueue<Robot> returns;
+
+	public ConcurrentMailPool(int nrobots) {
+		this(nrobots, null);
+	}
+
+	public ConcurrentMailPool(int nrobots, GroupCarryPlanner planner) {
+		super(nrobots, planner);
+		arrivals = new ConcurrentLinkedQueue<MailItem>();
+		returns = new ConcurrentLinkedQueue<Robot>();
+	}
+
+	@Override
+	public void addToPool(MailItem mailItem) {
+		arrivals.offer(mailItem);
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) {
+		returns.offer(robot);
+	}
+
+	/**
+	 * Moves the mail and robots queued since the last step into the pool
+	 */
+	private void drain() {
+		MailItem mailItem;
+		while ((mailItem = arrivals.poll()) != null) super.addToPool(mailItem);
+		Robot robot;
+		while ((robot = returns.poll()) != null) super.registerWaiting(robot);
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException {
+		drain();
+		super.step();
+	}
+
+	@Override
+	public boolean hasWork() {
+		drain();
+		return super.hasWork();
+	}
+
+	@Override
+	public int size() {
+		drain();
+		return super.size();
+	}
+}
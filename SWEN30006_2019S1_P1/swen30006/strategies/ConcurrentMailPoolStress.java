@@ -0,0 +1,222 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import automail.Configuration;
+import automail.MailItem;
+import automail.PrintStreamTraceSink;
+import automail.PriorityMailItem;
+import automail.Robot;
+import automail.SimulationContext;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Hammers a ConcurrentMailPool with mail from several producer threads while robots come back to it
+ * on several other threads, and checks that every item is delivered exactly once. A returning robot
+ * sometimes puts the item in its tube back in the pool instead of delivering it, as a robot which
+ * could not reach a floor would, so returns add mail concurrently too. One dispatcher thread steps
+ * the pool throughout.
+ *
+ * Usage: ConcurrentMailPoolStress [producers] [itemsPerProducer] [robots] [returners]
+ */
+public class ConcurrentMailPoolStress {
+
+	/** Give up if nothing is delivered for this long */
+	private static final long STALL_MILLIS = 10000;
+
+	/**
+	 * A robot which records what the pool gives it, instead of moving
+	 */
+	private static class StressRobot extends Robot {
+		MailItem hand;
+		MailItem tube;
+		boolean delivering;
+		/** Where the robot goes when the pool sends it off */
+		ConcurrentLinkedQueue<StressRobot> dispatched;
+
+		StressRobot(SimulationContext context, IMailPool mailPool) {
+			super(context, null, mailPool);
+		}
+
+		@Override
+		public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
+			hand = mailItem;
+			if (mailItem.getWeight() > TRIPLE_MAX_WEIGHT) throw new ItemTooHeavyException();
+		}
+
+		@Override
+		public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
+			tube = mailItem;
+			if (mailItem.getWeight() > INDIVIDUAL_MAX_WEIGHT) throw new ItemTooHeavyException();
+		}
+
+		@Override
+		public MailItem getTube() {
+			return tube;
+		}
+
+		@Override
+		public int tubeSpace() {
+			return tube == null ? 1 : 0;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return hand == null && tube == null;
+		}
+
+		@Override
+		public void setRobotDelivering() {
+			delivering = true;
+		}
+
+		@Override
+		public void resetPriority() {
+			hand = null;
+			delivering = false;
+		}
+
+		@Override
+		public void dispatch() {
+			dispatched.offer(this);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		final int producers = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+		final int itemsPerProducer = (args.length > 1) ? Integer.parseInt(args[1]) : 250000;
+		final int robotCount = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+		final int returners = (args.length > 3) ? Integer.parseInt(args[3]) : 2;
+		final int total = producers * itemsPerProducer;
+
+		Properties properties = Configuration.defaultProperties();
+		properties.setProperty("Mail_Max_Weight", "3000");
+		properties.setProperty("Robots", String.valueOf(robotCount));
+		properties.setProperty("Trace", "off");
+		SimulationContext context = new SimulationContext(new Configuration(properties), PrintStreamTraceSink.OFF, null);
+
+		final ConcurrentMailPool pool = new ConcurrentMailPool(robotCount);
+		final ConcurrentLinkedQueue<StressRobot> dispatched = new ConcurrentLinkedQueue<StressRobot>();
+		final AtomicIntegerArray deliveries = new AtomicIntegerArray(total);
+		final AtomicInteger delivered = new AtomicInteger();
+		final AtomicInteger requeued = new AtomicInteger();
+		final AtomicInteger nextId = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final int floors = context.building.FLOORS;
+
+		for (int i = 0; i < robotCount; i++) {
+			StressRobot robot = new StressRobot(context, pool);
+			robot.dispatched = dispatched;
+			pool.registerWaiting(robot);
+		}
+
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final long seed = p;
+			threads.add(new Thread("producer-" + p) {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					awaitStart(start);
+					for (int n = 0; n < itemsPerProducer; n++) {
+						int id = nextId.getAndIncrement();
+						int floor = random.nextInt(floors);
+						int weight = 1 + random.nextInt(Robot.TRIPLE_MAX_WEIGHT);
+						pool.addToPool((random.nextInt(6) == 0)
+								? new PriorityMailItem(id, floor, 0, weight, 10 * (1 + random.nextInt(10)))
+								: new MailItem(id, floor, 0, weight));
+					}
+				}
+			});
+		}
+		for (int r = 0; r < returners; r++) {
+			final long seed = 1000 + r;
+			Thread returner = new Thread("returner-" + r) {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					awaitStart(start);
+					while (delivered.get() < total) {
+						StressRobot robot = dispatched.poll();
+						if (robot == null) {
+							Thread.yield();
+							continue;
+						}
+						if (robot.hand != null && (robot.delivering || robot.hand.getWeight() <= Robot.INDIVIDUAL_MAX_WEIGHT)) {
+							deliver(robot.hand, deliveries, delivered);
+						}
+						if (robot.tube != null) {
+							if (random.nextInt(10) == 0) {
+								pool.addToPool(robot.tube);
+								requeued.incrementAndGet();
+							} else {
+								deliver(robot.tube, deliveries, delivered);
+							}
+						}
+						robot.hand = null;
+						robot.tube = null;
+						robot.delivering = false;
+						pool.registerWaiting(robot);
+					}
+				}
+			};
+			returner.setDaemon(true);
+			threads.add(returner);
+		}
+		for (Thread thread : threads) thread.start();
+
+		long began = System.nanoTime();
+		start.countDown();
+		int lastDelivered = -1;
+		long lastProgress = System.currentTimeMillis();
+		try {
+			while (delivered.get() < total) {
+				pool.step();
+				int now = delivered.get();
+				if (now != lastDelivered) {
+					lastDelivered = now;
+					lastProgress = System.currentTimeMillis();
+				} else if (System.currentTimeMillis() - lastProgress > STALL_MILLIS) {
+					break;
+				}
+			}
+		} catch (ItemTooHeavyException e) {
+			e.printStackTrace();
+		}
+		long elapsed = System.nanoTime() - began;
+
+		int missing = 0;
+		int duplicated = 0;
+		for (int id = 0; id < total; id++) {
+			int count = deliveries.get(id);
+			if (count == 0) missing++;
+			if (count > 1) duplicated++;
+		}
+		System.out.printf("Producers: %d; Returners: %d; Robots: %d%n", producers, returners, robotCount);
+		System.out.printf("Items: %d; Delivered: %d; Requeued: %d; Missing: %d; Duplicated: %d%n",
+				total, delivered.get(), requeued.get(), missing, duplicated);
+		System.out.printf("Elapsed: %.1f ms%n", elapsed / 1e6);
+		boolean passed = missing == 0 && duplicated == 0;
+		System.out.println(passed ? "PASSED" : "FAILED");
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static void deliver(MailItem mailItem, AtomicIntegerArray deliveries, AtomicInteger delivered) {
+		deliveries.incrementAndGet(mailItem.getId());
+		delivered.incrementAndGet();
+	}
+
+	private static void awaitStart(CountDownLatch start) {
+		try {
+			start.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
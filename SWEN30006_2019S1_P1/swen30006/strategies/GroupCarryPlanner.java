@@ -0,0 +1,113 @@
+package strategies;
+
+import java.util.Arrays;
+
+import automail.Building;
+import automail.Clock;
+import automail.MailItem;
+import automail.Robot;
+
+/**
+ * Decides whether a robot should wait in the mailroom to help carry a heavy item, from when the
+ * robots out delivering are expected back. A robot only waits if the group could not be complete
+ * before the robot would be back from delivering a light item instead, so the heavy item leaves
+ * no later than if the robot had waited, and the robot is not idle while it could be delivering.
+ *
+ * A pool using a planner never disbands a group for a newer item; the robots in it keep their
+ * place until it is complete.
+ */
+public class GroupCarryPlanner {
+
+	private final Clock clock;
+	/** How long each robot's loaded trip should take, by id */
+	private int[] trip = new int[16];
+	/** When each robot out delivering should be back, by id, or 0 once it is back */
+	private long[] due = new long[16];
+
+	public GroupCarryPlanner(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * @param mailItem an item too heavy for one robot
+	 * @return the number of robots needed to carry it
+	 */
+	public static int robotsNeeded(MailItem mailItem) {
+		return mailItem.getWeight() <= Robot.PAIR_MAX_WEIGHT ? 2 : 3;
+	}
+
+	private void ensure(int id) {
+		if (id >= due.length) {
+			int length = Math.max(due.length * 2, id + 1);
+			trip = Arrays.copyOf(trip, length);
+			due = Arrays.copyOf(due, length);
+		}
+	}
+
+	/**
+	 * Notes what a robot has been loaded with, to know when it will be back once it is dispatched
+	 * @param robot the robot
+	 * @param hand the item in its hand
+	 * @param furthest the highest floor it delivers to
+	 * @param stops the number of items it carries
+	 */
+	public void loaded(Robot robot, MailItem hand, int furthest, int stops) {
+		ensure(robot.getID());
+		int up = hand.getDestFloor() - Building.MAILROOM_LOCATION;
+		// a group climbs to its item's floor at a third of the speed
+		int handTicks = (hand.getWeight() > Robot.INDIVIDUAL_MAX_WEIGHT) ? 3 * up : up;
+		trip[robot.getID()] = handTicks + (furthest - hand.getDestFloor()) + (furthest - Building.MAILROOM_LOCATION) + stops;
+	}
+
+	/**
+	 * Notes that a loaded robot has left the mailroom
+	 */
+	public void dispatched(Robot robot) {
+		ensure(robot.getID());
+		due[robot.getID()] = clock.Time() + trip[robot.getID()];
+	}
+
+	/**
+	 * Notes that a robot is back in the mailroom
+	 */
+	public void returned(Robot robot) {
+		if (robot.getID() < due.length) due[robot.getID()] = 0;
+	}
+
+	/**
+	 * @param needed the number of robots the group still needs, counting this one
+	 * @param waiting the number of other robots waiting to be loaded this step
+	 * @param lightItem the light item the robot would carry instead, or null if there is none
+	 * @return whether the robot should join the group rather than deliver the light item
+	 */
+	public boolean hold(int needed, int waiting, MailItem lightItem) {
+		int missing = needed - 1 - waiting;
+		if (lightItem == null || missing <= 0) return true;
+		long ready = returnOf(missing);
+		if (ready == Long.MAX_VALUE) return true;
+		long back = clock.Time() + 2 * (lightItem.getDestFloor() - Building.MAILROOM_LOCATION) + 1;
+		return back > ready;
+	}
+
+	/**
+	 * @param n at most 3
+	 * @return when the n-th robot out delivering should be back, or Long.MAX_VALUE if fewer are out
+	 */
+	private long returnOf(int n) {
+		long now = clock.Time();
+		long[] soonest = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+		for (long d : due) {
+			if (d == 0) continue;
+			// a robot which is late is expected back at any moment
+			d = Math.max(d, now + 1);
+			for (int k = 0; k < n; k++) {
+				if (d < soonest[k]) {
+					long t = soonest[k];
+					soonest[k] = d;
+					d = t;
+				}
+			}
+		}
+		return soonest[n - 1];
+	}
+}
@@ -19,16 +19,9 @@ public class GroupRobotCarry {
 	
 	//adds a robot to the group if not already in it
 	public void addRobot(Robot otherRobot) {
-		boolean foundSimilar = false;
-		for (Robot robot: robots) {
-			if (robot.getID() == otherRobot.getID()) {
-				foundSimilar = true;
-			}
-		}
-		if (!foundSimilar) {
+		if (!foundRobot(otherRobot)) {
 			robots.add(otherRobot);
 		}
-		
 	}
 	
 	public boolean isEmpty() {
@@ -43,7 +36,7 @@ public class GroupRobotCarry {
 		return robots;
 	}
 	
-	//checks if the robot is already in the group
+	//checks if the robot is already in the group; ids are ints and a group is at most 3 robots
 	public boolean foundRobot(Robot otherRobot) {
 		for (Robot robot: robots) {
 			if (otherRobot.getID() == robot.getID()) {
@@ -53,6 +46,11 @@ public class GroupRobotCarry {
 		return false;
 	}
 	
+	//checks if there are enough robots in the group to carry the item
+	public boolean isComplete() {
+		return robots.size() >= GroupCarryPlanner.robotsNeeded(mailItem);
+	}
+	
 	public MailItem getMailItem() {
 		return mailItem;
 	}
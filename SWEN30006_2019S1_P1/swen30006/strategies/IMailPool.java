@@ -28,4 +28,14 @@ public interface IMailPool {
      */	
 	void registerWaiting(Robot robot);
 
+	/**
+     * @return true if step() would load a robot, i.e. a robot is waiting and there is mail for it
+     */
+	boolean hasWork();
+
+	/**
+     * @return the number of items waiting in the pool, not counting those loaded into waiting robots
+     */
+	int size();
+
 }
@@ -0,0 +1,18 @@
+package strategies;
+
+import automail.Configuration;
+import automail.SimulationContext;
+
+/**
+ * Creates a new mail pool of one strategy for each simulation run, see MailPoolRegistry
+ */
+public interface IMailPoolFactory {
+
+	/**
+	 * @param context the run the pool belongs to
+	 * @param configuration the settings of the run
+	 * @return a new, empty pool
+	 */
+	IMailPool create(SimulationContext context, Configuration configuration);
+
+}
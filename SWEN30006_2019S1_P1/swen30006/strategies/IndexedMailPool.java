@@ -0,0 +1,273 @@
+package strategies;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * A MailPool which keeps its items in a sorted index rather than re-sorting a list on every arrival.
+ * Items are ordered by priority (high first), then destination (high first), then by the order in
+ * which they were added to the pool, which is the same order the stable sort in MailPool produces.
+ * Adding and taking the head are O(log n), so the delivery sequence matches MailPool for any seed.
+ * Further indexes hold only the items light enough for each capacity of robot waiting on the pool,
+ * so filling a robot is a lookup instead of a scan past the items too heavy for it. An item which
+ * some robot can carry on its own is left for such a robot rather than for a group, and robots
+ * which cannot carry it take the first item they can, so heavy mail does not hold up the rest.
+ * With a GroupCarryPlanner, a robot only waits for a heavy item when the planner says so and
+ * otherwise takes the first light item, and a group is kept until it is complete.
+ */
+public class IndexedMailPool implements IMailPool {
+
+	private static class Item {
+		final int priority;
+		final int destination;
+		final long sequence;
+		final MailItem mailItem;
+
+		public Item(MailItem mailItem, long sequence) {
+			//--all no priority items have a priority == 1
+			priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 1;
+			destination = mailItem.getDestFloor();
+			this.sequence = sequence;
+			this.mailItem = mailItem;
+		}
+
+		/** A key to search the index with */
+		public Item(int priority, int destination, long sequence) {
+			this.priority = priority;
+			this.destination = destination;
+			this.sequence = sequence;
+			this.mailItem = null;
+		}
+	}
+
+	/** Priority descending, destination descending, then first added first */
+	private static final Comparator<Item> ITEM_ORDER = new Comparator<Item>() {
+		@Override
+		public int compare(Item i1, Item i2) {
+			if (i1.priority != i2.priority) {
+				return i1.priority > i2.priority ? -1 : 1;
+			} else if (i1.destination != i2.destination) {
+				return i1.destination > i2.destination ? -1 : 1;
+			}
+			return Long.compare(i1.sequence, i2.sequence);
+		}
+	};
+
+	private TreeSet<Item> pool;
+	/** The items in the pool which a robot of each capacity can carry on its own, in pool order */
+	private TreeMap<Integer, TreeSet<Item>> capable;
+	/** The heaviest item any robot registered with the pool can carry on its own */
+	private int maxCapacity = 0;
+	private LinkedList<Robot> robots;
+	private GroupRobotCarry groupRobotCarry;
+	/** The item the group is waiting to carry */
+	private Item groupItem;
+	private ArrayList<Robot> freeRobots = null;
+	/** Decides which robots wait for a heavy item, or null to have every robot wait */
+	private final GroupCarryPlanner planner;
+	/** Counts additions so that equal items keep their relative order */
+	private long sequence = 0;
+
+	public IndexedMailPool(int nrobots){
+		this(nrobots, null);
+	}
+
+	public IndexedMailPool(int nrobots, GroupCarryPlanner planner){
+		this.planner = planner;
+		// Start empty
+		pool = new TreeSet<Item>(ITEM_ORDER);
+		capable = new TreeMap<Integer, TreeSet<Item>>();
+		robots = new LinkedList<Robot>();
+	}
+
+	public void addToPool(MailItem mailItem) {
+		Item item = new Item(mailItem, sequence++);
+		pool.add(item);
+		for (TreeSet<Item> light : capable.tailMap(mailItem.getWeight(), true).values()) light.add(item);
+	}
+
+	private void remove(Item item) {
+		pool.remove(item);
+		for (TreeSet<Item> light : capable.tailMap(item.mailItem.getWeight(), true).values()) light.remove(item);
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException {
+		ListIterator<Robot> i = robots.listIterator();
+		while (i.hasNext()) loadRobot(i);
+
+		//free the robots which were waiting to carry a heavy item
+		if (freeRobots != null) {
+			for(Robot freeRobot: freeRobots) {
+				registerWaiting(freeRobot);
+			}
+			freeRobots = null;
+		}
+	}
+
+	private void loadRobot(ListIterator<Robot> i) throws ItemTooHeavyException {
+		Robot robot = i.next();
+		assert(robot.isEmpty());
+		if (pool.isEmpty()) return;
+
+		//the items this robot can carry on its own
+		TreeSet<Item> light = capable.get(robot.getCapacity());
+
+		//with a planner a group keeps its item even when it is no longer the head
+		Item head = (planner != null && groupItem != null) ? groupItem : pool.first();
+
+		//an item which another robot can carry on its own is left for it
+		int weight = head.mailItem.getWeight();
+		if (weight > robot.getCapacity() && weight <= maxCapacity) {
+			if (light.isEmpty()) return;
+			head = light.first();
+		}
+		MailItem nextMailItem = head.mailItem;
+		boolean itemRemoved = false;
+
+		//the planner may send the robot with a light item rather than have it wait for the group
+		if (planner != null && nextMailItem.getWeight() > robot.getCapacity() && nextMailItem.getWeight() <= Robot.TRIPLE_MAX_WEIGHT) {
+			int needed = GroupCarryPlanner.robotsNeeded(nextMailItem) - ((groupRobotCarry == null) ? 0 : groupRobotCarry.getNumRobots());
+			Item first = light.isEmpty() ? null : light.first();
+			if (!planner.hold(needed, robots.size() - i.nextIndex(), (first == null) ? null : first.mailItem)) {
+				head = first;
+				nextMailItem = head.mailItem;
+			}
+		}
+
+		//case: when higher priority item comes in while robots are queuing to carry a heavy item
+		//solution: disbands the queue and carries the new item
+		if ((planner == null) && (groupRobotCarry != null) && (nextMailItem != groupRobotCarry.getMailItem())) {
+			groupRobotCarry.resetPriority();
+			freeRobots = groupRobotCarry.getRobots();
+			groupRobotCarry = null;
+			groupItem = null;
+		}
+
+		// hand first as we want higher priority delivered first
+		robot.addToHand(nextMailItem);
+
+		//robot carries item if it is light enough
+		if (nextMailItem.getWeight() <= robot.getCapacity()) {
+			remove(head);
+			itemRemoved = true;
+
+		} else if (nextMailItem.getWeight() <= Robot.TRIPLE_MAX_WEIGHT) {
+
+			//add robot to carry a heavy item if a group already exists
+			if ((groupRobotCarry != null) && !groupRobotCarry.foundRobot(robot)) {
+				groupRobotCarry.addRobot(robot);
+
+			} else {
+			//create a group to carry a heavy item if one does not already exists
+				robot.setRobotDelivering();
+				groupRobotCarry = new GroupRobotCarry(new ArrayList<Robot>(Arrays.asList(robot)), nextMailItem);
+				groupItem = head;
+			}
+
+			robot.setInGroup();
+
+			//remove from the pool when there is enough robots can carry it
+			if (groupRobotCarry.isComplete()) {
+				remove(head);
+				itemRemoved = true;
+			}
+
+		} else {
+			throw new ItemTooHeavyException();
+		}
+
+		//the head is either gone or too heavy for the tube, so the best tube item is the first light one
+		int furthest = nextMailItem.getDestFloor();
+		int stops = 1;
+		if (robot.tubeSpace() > 0 && !light.isEmpty()) {
+			Item tubeItem = light.first();
+			remove(tubeItem);
+			robot.addToTube(tubeItem.mailItem);
+			furthest = Math.max(furthest, tubeItem.destination);
+			stops++;
+			//then the rest of the tube takes the best priority left, nearest the floor of the item before
+			while (robot.tubeSpace() > 0 && !light.isEmpty()) {
+				tubeItem = nearest(light, light.first().priority, tubeItem.destination);
+				remove(tubeItem);
+				robot.addToTube(tubeItem.mailItem);
+				furthest = Math.max(furthest, tubeItem.destination);
+				stops++;
+			}
+		}
+		if (planner != null) planner.loaded(robot, nextMailItem, furthest, stops);
+
+		//dispatches the robots when there is enough robots to carry the item
+		boolean grouped = groupRobotCarry != null && nextMailItem == groupRobotCarry.getMailItem();
+		if (grouped && itemRemoved) {
+			for (Robot a_robot: groupRobotCarry.getRobots()) {
+				dispatch(a_robot);
+			}
+			groupRobotCarry = null;
+			groupItem = null;
+		} else if (!grouped && itemRemoved) {
+			dispatch(robot);
+		}
+		i.remove();
+	}
+
+	/**
+	 * @param light the items a robot can carry
+	 * @param priority a priority some light item has
+	 * @param floor the floor to be near
+	 * @return the first added light item of that priority whose destination is nearest the floor,
+	 * the lower floor if two are as near
+	 */
+	private Item nearest(TreeSet<Item> light, int priority, int floor) {
+		Item key = new Item(priority, floor, Long.MIN_VALUE);
+		Item below = light.ceiling(key);
+		if (below != null && below.priority != priority) below = null;
+		Item above = light.lower(key);
+		if (above != null && above.priority != priority) above = null;
+		if (above == null) return below;
+		above = light.ceiling(new Item(priority, above.destination, Long.MIN_VALUE));
+		if (below == null) return above;
+		return (above.destination - floor < floor - below.destination) ? above : below;
+	}
+
+	private void dispatch(Robot robot) {
+		if (planner != null) planner.dispatched(robot);
+		robot.dispatch();
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) { // assumes won't be there already
+		if (planner != null) planner.returned(robot);
+		int capacity = robot.getCapacity();
+		if (!capable.containsKey(capacity)) {
+			TreeSet<Item> light = new TreeSet<Item>(ITEM_ORDER);
+			for (Item item : pool) {
+				if (item.mailItem.getWeight() <= capacity) light.add(item);
+			}
+			capable.put(capacity, light);
+		}
+		maxCapacity = Math.max(maxCapacity, capacity);
+		robots.add(robot);
+	}
+
+	@Override
+	public boolean hasWork() {
+		return !robots.isEmpty() && !pool.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return pool.size();
+	}
+
+}
@@ -0,0 +1,282 @@
+package strategies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.PriorityQueue;
+
+import automail.Building;
+import automail.Clock;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * A MailPool which loads each robot with the items that would cost the most score to leave
+ * behind, rather than in a fixed priority and floor order. Leaving an item means it waits at least
+ * until the next robot is due back, so the cost of leaving it is how much that wait adds to
+ * (delay)^1.2 * (1 + sqrt(priority)) when it is finally delivered, given how long it has already
+ * waited and how far its floor is. The hand takes the costliest item per robot it needs, and the
+ * tube the costliest light items per floor of extra travel beyond the trip so far.
+ *
+ * Items are kept in buckets of the same priority, floor and weight class, oldest first, so only
+ * the head of each bucket can be the costliest and a decision looks at no more buckets than there
+ * are priorities times floors, however many items are queued. The pool notes when each robot it
+ * dispatches should be back, to know how long anything it leaves will wait.
+ *
+ * A group forming to carry a heavy item is never disbanded; every robot which comes along joins it
+ * until it is big enough. The pool makes its own groups this way whatever Group_Carry says, so a
+ * GroupCarryPlanner is never used with it.
+ */
+public class LookaheadMailPool implements IMailPool {
+
+	private static final double PENALTY = 1.2;
+
+	/** The items of one priority, destination and weight class, oldest first */
+	private static class Bucket {
+		final int priority;
+		final int destination;
+		final boolean heavy;
+		/** The score weight, 1 + sqrt(priority) */
+		final double weight;
+		final PriorityQueue<Entry> items = new PriorityQueue<Entry>(ENTRY_ORDER);
+		/** Where the bucket is in the active list, or -1 when it is empty */
+		int active = -1;
+
+		Bucket(int priority, int destination, boolean heavy) {
+			this.priority = priority;
+			this.destination = destination;
+			this.heavy = heavy;
+			this.weight = 1 + Math.sqrt(priority);
+		}
+	}
+
+	private static class Entry {
+		final MailItem mailItem;
+		final long sequence;
+
+		Entry(MailItem mailItem, long sequence) {
+			this.mailItem = mailItem;
+			this.sequence = sequence;
+		}
+	}
+
+	/** Earliest arrival first, then first added */
+	private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			int order = Integer.compare(e1.mailItem.getArrivalTime(), e2.mailItem.getArrivalTime());
+			return order != 0 ? order : Long.compare(e1.sequence, e2.sequence);
+		}
+	};
+
+	private final Clock clock;
+	private final HashMap<Long, Bucket> buckets = new HashMap<Long, Bucket>();
+	/** The buckets with items in them, in no particular order */
+	private final ArrayList<Bucket> active = new ArrayList<Bucket>();
+	private long sequence = 0;
+	/** The number of items in the buckets */
+	private int size = 0;
+
+	private final LinkedList<Robot> robots = new LinkedList<Robot>();
+	/** The robots out delivering and when each should be back, soonest first; stale once the robot is back */
+	private final PriorityQueue<long[]> returns = new PriorityQueue<long[]>(new Comparator<long[]>() {
+		@Override
+		public int compare(long[] r1, long[] r2) {
+			return Long.compare(r1[0], r2[0]);
+		}
+	});
+	/** When each robot is due back, by id, or 0 once it is back */
+	private long[] dueBack = new long[16];
+
+	private GroupRobotCarry groupRobotCarry;
+	private Bucket groupBucket;
+
+	public LookaheadMailPool(Clock clock) {
+		this.clock = clock;
+	}
+
+	@Override
+	public void addToPool(MailItem mailItem) {
+		//--all no priority items have a priority == 0, which weighs them as Simulation does
+		int priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+		boolean heavy = mailItem.getWeight() > Robot.INDIVIDUAL_MAX_WEIGHT;
+		long key = ((long) priority << 33) | ((long) mailItem.getDestFloor() << 1) | (heavy ? 1 : 0);
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new Bucket(priority, mailItem.getDestFloor(), heavy);
+			buckets.put(key, bucket);
+		}
+		bucket.items.add(new Entry(mailItem, sequence++));
+		size++;
+		if (bucket.active == -1) {
+			bucket.active = active.size();
+			active.add(bucket);
+		}
+	}
+
+	private MailItem take(Bucket bucket) {
+		MailItem mailItem = bucket.items.poll().mailItem;
+		size--;
+		if (bucket.items.isEmpty()) {
+			Bucket last = active.remove(active.size() - 1);
+			if (last != bucket) {
+				active.set(bucket.active, last);
+				last.active = bucket.active;
+			}
+			bucket.active = -1;
+		}
+		return mailItem;
+	}
+
+	/**
+	 * @return how much more an item would score if it were left for the given number of ticks
+	 * @param bucket the item's bucket
+	 * @param arrival when the item arrived
+	 * @param ticks how long after now the item would be delivered if it went now
+	 * @param wait how long the item would be left
+	 */
+	private double leaveCost(Bucket bucket, int arrival, int ticks, int wait) {
+		int delay = clock.Time() - arrival + ticks;
+		return bucket.weight * (Math.pow(delay + wait, PENALTY) - Math.pow(Math.max(delay, 0), PENALTY));
+	}
+
+	/**
+	 * @return the number of ticks until the next robot after this one is free, at least 1
+	 */
+	private int horizon() {
+		if (robots.size() > 1) return 1;
+		while (!returns.isEmpty() && dueBack[(int) returns.peek()[1]] != returns.peek()[0]) returns.poll();
+		if (returns.isEmpty()) return 1;
+		return (int) Math.max(1, returns.peek()[0] - clock.Time());
+	}
+
+	private static int robotsNeeded(Bucket bucket, MailItem mailItem) {
+		if (!bucket.heavy) return 1;
+		return mailItem.getWeight() <= Robot.PAIR_MAX_WEIGHT ? 2 : 3;
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException {
+		ListIterator<Robot> i = robots.listIterator();
+		while (i.hasNext() && (groupRobotCarry != null || !active.isEmpty())) {
+			Robot robot = i.next();
+			loadRobot(robot);
+			i.remove();
+		}
+	}
+
+	private void loadRobot(Robot robot) throws ItemTooHeavyException {
+		assert(robot.isEmpty());
+		int wait = horizon();
+		boolean itemRemoved = false;
+		MailItem hand;
+		boolean inGroup = false;
+
+		if (groupRobotCarry != null) {
+			// a group is forming, so this robot joins it
+			hand = groupRobotCarry.getMailItem();
+			inGroup = true;
+		} else {
+			// the hand takes whatever costs the most to leave, per robot it needs
+			Bucket best = null;
+			double bestCost = -1;
+			for (Bucket bucket : active) {
+				MailItem head = bucket.items.peek().mailItem;
+				double cost = leaveCost(bucket, head.getArrivalTime(), bucket.destination - Building.MAILROOM_LOCATION + 1, wait)
+						/ robotsNeeded(bucket, head);
+				if (cost > bestCost) {
+					best = bucket;
+					bestCost = cost;
+				}
+			}
+			if (best.heavy) {
+				hand = best.items.peek().mailItem;
+				if (hand.getWeight() > Robot.TRIPLE_MAX_WEIGHT) throw new ItemTooHeavyException();
+				robot.setRobotDelivering();
+				groupRobotCarry = new GroupRobotCarry(new ArrayList<Robot>(Arrays.asList(robot)), hand);
+				groupBucket = best;
+				inGroup = true;
+			} else {
+				hand = take(best);
+				itemRemoved = true;
+			}
+		}
+
+		robot.addToHand(hand);
+		if (inGroup) {
+			if (!groupRobotCarry.foundRobot(robot)) groupRobotCarry.addRobot(robot);
+			robot.setInGroup();
+			if (groupRobotCarry.getNumRobots() == robotsNeeded(groupBucket, hand)) {
+				take(groupBucket);
+				itemRemoved = true;
+			}
+		}
+
+		// the tube takes the light items which cost the most to leave per floor they add to the trip
+		int furthest = hand.getDestFloor();
+		int stops = 1;
+		while (robot.tubeSpace() > 0) {
+			Bucket best = null;
+			double bestCost = -1;
+			for (Bucket bucket : active) {
+				if (bucket.heavy) continue;
+				MailItem head = bucket.items.peek().mailItem;
+				int extra = Math.max(0, bucket.destination - furthest);
+				double cost = leaveCost(bucket, head.getArrivalTime(), Math.max(bucket.destination, furthest) - Building.MAILROOM_LOCATION + 1, wait)
+						/ (1 + 2 * extra);
+				if (cost > bestCost) {
+					best = bucket;
+					bestCost = cost;
+				}
+			}
+			if (best == null) break;
+			robot.addToTube(take(best));
+			stops++;
+			furthest = Math.max(furthest, best.destination);
+		}
+
+		if (!itemRemoved) return;
+		// the robots set off, and should be back after the round trip and a tick per stop
+		int trip = 2 * (furthest - Building.MAILROOM_LOCATION) + stops;
+		if (inGroup) {
+			for (Robot a_robot : groupRobotCarry.getRobots()) {
+				expectBack(a_robot, clock.Time() + 3 * trip);
+				a_robot.dispatch();
+			}
+			groupRobotCarry = null;
+			groupBucket = null;
+		} else {
+			expectBack(robot, clock.Time() + trip);
+			robot.dispatch();
+		}
+	}
+
+	private void expectBack(Robot robot, long time) {
+		int id = robot.getID();
+		if (id >= dueBack.length) dueBack = Arrays.copyOf(dueBack, Math.max(dueBack.length * 2, id + 1));
+		dueBack[id] = time;
+		returns.add(new long[] { time, id });
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) { // assumes won't be there already
+		if (robot.getID() < dueBack.length) dueBack[robot.getID()] = 0;
+		robots.add(robot);
+	}
+
+	@Override
+	public boolean hasWork() {
+		return !robots.isEmpty() && (groupRobotCarry != null || !active.isEmpty());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+}
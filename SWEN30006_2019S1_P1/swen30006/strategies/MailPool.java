@@ -49,8 +49,19 @@ public class MailPool implements IMailPool {
 	private LinkedList<Robot> robots;
 	private GroupRobotCarry groupRobotCarry;
 	private ArrayList<Robot> freeRobots = null;
+	//decides which robots wait for a heavy item, or null to have every robot wait
+	private final GroupCarryPlanner planner;
+	//the heaviest item any robot registered with the pool can carry on its own
+	private int maxCapacity = 0;
 
 	public MailPool(int nrobots){
+		this(nrobots, null);
+	}
+
+	//with a planner, a robot only waits for a heavy item when the planner says so and otherwise
+	//takes the first light item, and a group is kept until it is complete
+	public MailPool(int nrobots, GroupCarryPlanner planner){
+		this.planner = planner;
 		// Start empty
 		pool = new LinkedList<Item>();
 		robots = new LinkedList<Robot>();
@@ -95,9 +106,42 @@ public class MailPool implements IMailPool {
 			try {
 			nextMailItem = j.next().mailItem;
 			
+			if (planner != null) {
+				//a group keeps its item even when it is no longer the head
+				if (groupRobotCarry != null) {
+					while (nextMailItem != groupRobotCarry.getMailItem()) nextMailItem = j.next().mailItem;
+				}
+			}
+			
+			//an item which another robot can carry on its own is left for it, and this robot
+			//takes the first item it can carry, if there is one
+			if (nextMailItem.getWeight() > robot.getCapacity() && nextMailItem.getWeight() <= maxCapacity) {
+				while (nextMailItem.getWeight() > robot.getCapacity()) {
+					if (!j.hasNext()) return;
+					nextMailItem = j.next().mailItem;
+				}
+			}
+			
+			if (planner != null) {
+				//the planner may send the robot with a light item rather than have it wait for the group
+				if (nextMailItem.getWeight() > robot.getCapacity() && nextMailItem.getWeight() <= Robot.TRIPLE_MAX_WEIGHT) {
+					int needed = GroupCarryPlanner.robotsNeeded(nextMailItem) - ((groupRobotCarry == null) ? 0 : groupRobotCarry.getNumRobots());
+					ListIterator<Item> k = pool.listIterator();
+					MailItem light = null;
+					while (light == null && k.hasNext()) {
+						MailItem item = k.next().mailItem;
+						if (item.getWeight() <= robot.getCapacity()) light = item;
+					}
+					if (!planner.hold(needed, robots.size() - i.nextIndex(), light)) {
+						j = k;
+						nextMailItem = light;
+					}
+				}
+			}
+			
 			//case: when higher priority item comes in while robots are queuing to carry a heavy item
 			//solution: disbands the queue and carries the new item
-			if ((groupRobotCarry != null) && (nextMailItem != groupRobotCarry.getMailItem())) {
+			if ((planner == null) && (groupRobotCarry != null) && (nextMailItem != groupRobotCarry.getMailItem())) {
 				groupRobotCarry.resetPriority();
 				freeRobots = groupRobotCarry.getRobots();
 				groupRobotCarry = null;
@@ -107,7 +151,7 @@ public class MailPool implements IMailPool {
 			robot.addToHand(nextMailItem); 
 
 			//robot carries item if it is light enough
-			if(nextMailItem.getWeight() <= Robot.INDIVIDUAL_MAX_WEIGHT)  {
+			if(nextMailItem.getWeight() <= robot.getCapacity())  {
 				j.remove();
 				itemRemoved = true;
 				
@@ -128,8 +172,7 @@ public class MailPool implements IMailPool {
 
 				
 				//remove from the pool when there is enough robots can carry it
-				if (((nextMailItem.getWeight() <= Robot.PAIR_MAX_WEIGHT) && (groupRobotCarry.getNumRobots() == 2))
-						|| (groupRobotCarry.getNumRobots() == 3)) {
+				if (groupRobotCarry.isComplete()) {
 					j.remove();
 					itemRemoved = true;
 				} 
@@ -138,28 +181,36 @@ public class MailPool implements IMailPool {
 				throw new ItemTooHeavyException();
 			}
 			
+			MailItem hand = nextMailItem;
+			int furthest = hand.getDestFloor();
+			int stops = 1;
 			if (pool.size() > 0) {
+				//the items before the hand item are heavy unless a group kept its item
+				if (planner != null) j = pool.listIterator();
 				
-				//traverses through the mail pool to find an item that the tube can carry
-				while(j.hasNext() && robot.getTube() == null) {
+				//traverses through the mail pool to find items that the tube can carry
+				while(j.hasNext() && robot.tubeSpace() > 0) {
 					nextMailItem = j.next().mailItem;
-					if (nextMailItem.getWeight() <= Robot.INDIVIDUAL_MAX_WEIGHT) {
+					if (nextMailItem.getWeight() <= robot.getCapacity()) {
 						robot.addToTube(nextMailItem);
 						j.remove();
-						break;
+						furthest = Math.max(furthest, nextMailItem.getDestFloor());
+						stops++;
 					}
 				}
 			}
+			if (planner != null) planner.loaded(robot, hand, furthest, stops);
 			
 			
 			//dispatches the robots when there is enough robots to carry the item
-			if ((groupRobotCarry != null) && itemRemoved) {
+			boolean grouped = (groupRobotCarry != null) && (hand == groupRobotCarry.getMailItem());
+			if (grouped && itemRemoved) {
 				for (Robot a_robot: groupRobotCarry.getRobots()) {
-					groupRobotCarry = null;
-					a_robot.dispatch();
+					dispatch(a_robot);
 				}
-			} else if (groupRobotCarry == null && itemRemoved) {
-				robot.dispatch();
+				groupRobotCarry = null;
+			} else if (!grouped && itemRemoved) {
+				dispatch(robot);
 			}		
 			i.remove();
 
@@ -170,11 +221,28 @@ public class MailPool implements IMailPool {
 		
 	}
 
+	private void dispatch(Robot robot) {
+		if (planner != null) planner.dispatched(robot);
+		robot.dispatch();
+	}
+
 	@Override
 	public void registerWaiting(Robot robot) { // assumes won't be there already
+		if (planner != null) planner.returned(robot);
+		maxCapacity = Math.max(maxCapacity, robot.getCapacity());
 		robots.add(robot);
 	}
 
+	@Override
+	public boolean hasWork() {
+		return !robots.isEmpty() && !pool.isEmpty();
+	}
+
+	@Override
+	public int size() {
+		return pool.size();
+	}
+
 }
 
 
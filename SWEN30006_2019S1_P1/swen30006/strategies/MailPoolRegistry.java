@@ -0,0 +1,91 @@
+package strategies;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import automail.Clock;
+import automail.Configuration;
+import automail.RobotType;
+import automail.SimulationContext;
+
+/**
+ * The mail pool strategies which the MailPool property can name. The strategies of this package
+ * are registered by their class name, with or without the package; others can be registered
+ * under any name. A class name which is not registered is loaded by reflection, and must implement
+ * IMailPool with a public constructor taking the number of robots.
+ */
+public class MailPoolRegistry {
+
+	private static final String PACKAGE = MailPoolRegistry.class.getPackage().getName() + ".";
+	private static final LinkedHashMap<String, IMailPoolFactory> factories = new LinkedHashMap<String, IMailPoolFactory>();
+
+	static {
+		register("MailPool", (context, configuration) -> new MailPool(configuration.robots, planner(context, configuration)));
+		register("IndexedMailPool", (context, configuration) -> new IndexedMailPool(configuration.robots, planner(context, configuration)));
+		register("ConcurrentMailPool", (context, configuration) -> new ConcurrentMailPool(configuration.robots, planner(context, configuration)));
+		register("LookaheadMailPool", (context, configuration) -> new LookaheadMailPool(standardOnly(context, configuration)));
+	}
+
+	private MailPoolRegistry() {
+	}
+
+	/**
+	 * @return a planner for the heavy items of the run if Group_Carry asks for one, otherwise null
+	 */
+	private static GroupCarryPlanner planner(SimulationContext context, Configuration configuration) {
+		return configuration.reserveGroups ? new GroupCarryPlanner(context.clock) : null;
+	}
+
+	/**
+	 * @return the clock of the run, if its robots are all Standard robots
+	 * @throws IllegalArgumentException for any other type, as LookaheadMailPool splits the items at the Standard capacity
+	 */
+	private static Clock standardOnly(SimulationContext context, Configuration configuration) {
+		for (RobotType type : configuration.robotTypes) {
+			if (!type.isStandard(configuration.tubeCapacity)) {
+				throw new IllegalArgumentException("LookaheadMailPool only supports Standard robots, not " + type);
+			}
+		}
+		return context.clock;
+	}
+
+	/**
+	 * Adds a strategy, or replaces the one already registered under the name
+	 */
+	public static synchronized void register(String name, IMailPoolFactory factory) {
+		factories.put(name, factory);
+	}
+
+	/**
+	 * @return the names of the registered strategies, in the order they were registered
+	 */
+	public static synchronized List<String> names() {
+		return new ArrayList<String>(factories.keySet());
+	}
+
+	/**
+	 * @param name a registered name, or the class name of an IMailPool
+	 * @param context the run the pool belongs to
+	 * @param configuration the settings of the run
+	 * @return a new pool of the strategy
+	 * @throws IllegalArgumentException if no strategy has the name
+	 */
+	public static IMailPool create(String name, SimulationContext context, Configuration configuration) {
+		IMailPoolFactory factory;
+		synchronized (MailPoolRegistry.class) {
+			factory = factories.get(name);
+			if (factory == null && name.startsWith(PACKAGE)) factory = factories.get(name.substring(PACKAGE.length()));
+		}
+		if (factory != null) return factory.create(context, configuration);
+		try {
+			Class<? extends IMailPool> strategy = Class.forName(name).asSubclass(IMailPool.class);
+			return strategy.getConstructor(int.class).newInstance(configuration.robots);
+		} catch (ClassNotFoundException | ClassCastException | NoSuchMethodException e) {
+			throw new IllegalArgumentException("Unknown MailPool: " + name, e);
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalArgumentException("Unable to create MailPool " + name, e);
+		}
+	}
+}
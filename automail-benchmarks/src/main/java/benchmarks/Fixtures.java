@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Properties;
+
+import automail.Configuration;
+import automail.MailGenerator;
+import automail.MailItem;
+import automail.PrintStreamTraceSink;
+import automail.SimulationContext;
+import strategies.CollectingMailPool;
+import strategies.IMailPool;
+import strategies.MailPoolRegistry;
+
+/**
+ * Builds the pieces of a simulation the benchmarks need
+ */
+final class Fixtures {
+
+	static final int SEED = 30006;
+
+	private Fixtures() {
+	}
+
+	/**
+	 * @return the settings for a run with tracing off
+	 */
+	static Configuration configuration(int floors, int robots, int mailToCreate, int lastDeliveryTime, String engine) {
+		return configuration(floors, robots, mailToCreate, lastDeliveryTime, engine, "objects");
+	}
+
+	/**
+	 * @return the settings for a run with tracing off and the given fleet model
+	 */
+	static Configuration configuration(int floors, int robots, int mailToCreate, int lastDeliveryTime, String engine, String fleet) {
+		Properties properties = Configuration.defaultProperties();
+		properties.setProperty("Floors", String.valueOf(floors));
+		properties.setProperty("Robots", String.valueOf(robots));
+		properties.setProperty("Mail_to_Create", String.valueOf(mailToCreate));
+		properties.setProperty("Mail_Max_Weight", "3000");
+		properties.setProperty("Last_Delivery_Time", String.valueOf(lastDeliveryTime));
+		properties.setProperty("Engine", engine);
+		properties.setProperty("Fleet", fleet);
+		properties.setProperty("Trace", "off");
+		return new Configuration(properties);
+	}
+
+	/**
+	 * @return a context for a run with tracing off
+	 */
+	static SimulationContext context(Configuration configuration) {
+		return new SimulationContext(configuration, PrintStreamTraceSink.OFF, null);
+	}
+
+	/**
+	 * @param name a strategy registered with MailPoolRegistry
+	 * @return a new, empty mail pool for the run
+	 */
+	static IMailPool pool(String name, SimulationContext context, Configuration configuration) {
+		return MailPoolRegistry.create(name, context, configuration);
+	}
+
+	/**
+	 * Generates the mail for a run, in order of arrival, using up the context's clock
+	 * @param context the run the mail belongs to
+	 * @return roughly mailToCreate items, as MailGenerator varies the amount by 20%
+	 */
+	static MailItem[] mail(SimulationContext context, int mailToCreate) {
+		final ArrayList<MailItem> items = new ArrayList<MailItem>();
+		IMailPool collector = new CollectingMailPool(items::add);
+		HashMap<Boolean, Integer> seed = new HashMap<Boolean, Integer>();
+		seed.put(true, SEED);
+		MailGenerator generator = new MailGenerator(context, mailToCreate, 3000, collector, seed);
+		generator.generateAllMail();
+		while (context.clock.Time() <= context.clock.LAST_DELIVERY_TIME) {
+			generator.step();
+			context.clock.Tick();
+		}
+		return items.toArray(new MailItem[items.size()]);
+	}
+}
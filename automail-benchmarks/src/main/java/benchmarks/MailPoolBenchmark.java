@@ -0,0 +1,171 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.Configuration;
+import automail.IMailDelivery;
+import automail.MailItem;
+import automail.Robot;
+import automail.SimulationContext;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+
+/**
+ * Measures the mail pools with a given number of items waiting.
+ *
+ * fill:  adds a backlog of generated mail to an empty pool, one item at a time
+ * step:  a robot comes back to a pool holding the backlog and is loaded; the items the pool gives
+ *        up are added back, so the backlog stays the same size. The robots only note what they are
+ *        given, and are reused once they are dispatched, so the pool sees a fleet of a fixed size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailPoolBenchmark {
+
+	@Param({"MailPool", "IndexedMailPool", "LookaheadMailPool"})
+	public String pool;
+
+	@Param({"100", "1000", "10000"})
+	public int backlog;
+
+	private Configuration configuration;
+	private SimulationContext context;
+	private MailItem[] mail;
+	private IMailPool mailPool;
+	private BenchRobot[] robots;
+	private int next;
+	/** The items the pool gave up in this step, to be added back */
+	private final ArrayList<MailItem> taken = new ArrayList<MailItem>();
+	/** The hand item already added back this step, which every robot of a group is dispatched with */
+	private MailItem dispatchedHand;
+
+	private final IMailDelivery delivery = new IMailDelivery() {
+		@Override
+		public void deliver(MailItem mailItem) {
+		}
+	};
+
+	/**
+	 * A robot which keeps what it is loaded with to itself, and gives back to the benchmark the
+	 * items the pool has let go of: the tube items as they are loaded, and the hand item once the
+	 * robot is dispatched with it
+	 */
+	private final class BenchRobot extends Robot {
+		private MailItem hand;
+		private int tubeCount;
+		/** Whether the robot is waiting in the pool or in a group, rather than back from a trip */
+		private boolean busy;
+
+		BenchRobot() {
+			super(context, delivery, mailPool);
+		}
+
+		void returned() {
+			hand = null;
+			tubeCount = 0;
+			busy = true;
+		}
+
+		@Override
+		public void addToHand(MailItem mailItem) {
+			hand = mailItem;
+		}
+
+		@Override
+		public void addToTube(MailItem mailItem) {
+			tubeCount++;
+			taken.add(mailItem);
+		}
+
+		@Override
+		public int tubeSpace() {
+			return context.tubeCapacity - tubeCount;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return hand == null && tubeCount == 0;
+		}
+
+		@Override
+		public MailItem getTube() {
+			return null;
+		}
+
+		@Override
+		public void resetPriority() {
+			super.resetPriority();
+			hand = null;
+		}
+
+		@Override
+		public void dispatch() {
+			if (hand != dispatchedHand) {
+				taken.add(hand);
+				dispatchedHand = hand;
+			}
+			busy = false;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void generate() {
+		// Spread the arrivals out so that the backlog is made of realistic arrival times
+		configuration = Fixtures.configuration(20, 10, backlog, backlog, "tick");
+		context = Fixtures.context(configuration);
+		mail = Fixtures.mail(context, backlog);
+	}
+
+	@Setup(Level.Iteration)
+	public void fillPool() {
+		mailPool = Fixtures.pool(pool, context, configuration);
+		for (MailItem mailItem : mail) mailPool.addToPool(mailItem);
+		robots = new BenchRobot[configuration.robots];
+		for (int i = 0; i < robots.length; i++) robots[i] = new BenchRobot();
+		next = 0;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public IMailPool fill() {
+		IMailPool fresh = Fixtures.pool(pool, context, configuration);
+		for (MailItem mailItem : mail) fresh.addToPool(mailItem);
+		return fresh;
+	}
+
+	@Benchmark
+	public Robot step() throws ItemTooHeavyException {
+		// The next robot which is not waiting to make up a group comes back
+		BenchRobot robot = robots[next];
+		while (robot.busy) {
+			next = (next + 1) % robots.length;
+			robot = robots[next];
+		}
+		next = (next + 1) % robots.length;
+		robot.returned();
+		mailPool.registerWaiting(robot);
+		dispatchedHand = null;
+		mailPool.step();
+		for (MailItem mailItem : taken) mailPool.addToPool(mailItem);
+		taken.clear();
+		return robot;
+	}
+}
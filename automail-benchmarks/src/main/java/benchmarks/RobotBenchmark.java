@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.IMailDelivery;
+import automail.MailItem;
+import automail.Robot;
+import automail.SimulationContext;
+import exceptions.ExcessiveDeliveryException;
+import strategies.IndexedMailPool;
+
+/**
+ * Measures a single Robot.step() in each state.
+ * The robot is sent to a floor so far away that it is still travelling at the end of every
+ * iteration, so DELIVERING and RETURNING measure a moving robot and WAITING an idle one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotBenchmark {
+
+	private static final int FAR_FLOOR = Integer.MAX_VALUE - 1;
+
+	@Param({"WAITING", "DELIVERING", "RETURNING"})
+	public Robot.RobotState state;
+
+	private Robot robot;
+
+	@Setup(Level.Iteration)
+	public void place() throws Throwable {
+		SimulationContext context = Fixtures.context(Fixtures.configuration(12, 1, 10, 10, "tick"));
+		IMailDelivery delivery = new IMailDelivery() {
+			@Override
+			public void deliver(MailItem mailItem) {
+			}
+		};
+		robot = new Robot(context, delivery, new IndexedMailPool(1));
+		robot.step(); // arrives in the mailroom and waits
+		if (state == Robot.RobotState.WAITING) return;
+
+		robot.addToHand(new MailItem(context.nextMailId(), FAR_FLOOR, 0, 100));
+		robot.dispatch();
+		robot.step(); // sets off
+		if (state == Robot.RobotState.DELIVERING) return;
+
+		robot.travel(robot.travelSteps());
+		robot.step(); // delivers at the far floor and starts back
+	}
+
+	@Benchmark
+	public Robot step() throws ExcessiveDeliveryException {
+		robot.step();
+		return robot;
+	}
+}
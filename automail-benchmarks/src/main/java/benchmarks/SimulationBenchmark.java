@@ -0,0 +1,62 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import automail.Configuration;
+import automail.PrintStreamTraceSink;
+import automail.Simulation;
+
+/**
+ * Measures a whole run of the simulation at a fixed seed with tracing off,
+ * scaling the building, the fleet and the amount of mail.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulationBenchmark {
+
+	@Param({"12", "50"})
+	public int floors;
+
+	@Param({"3", "10"})
+	public int robots;
+
+	@Param({"200", "2000"})
+	public int mailToCreate;
+
+	@Param({"tick", "event"})
+	public String engine;
+
+	@Param({"objects", "arrays"})
+	public String fleet;
+
+	private Configuration configuration;
+
+	@Setup(Level.Trial)
+	public void configure() {
+		configuration = Fixtures.configuration(floors, robots, mailToCreate, 300, engine, fleet);
+	}
+
+	@Benchmark
+	public double run() throws Throwable {
+		Simulation simulation = new Simulation(configuration, Fixtures.SEED, PrintStreamTraceSink.OFF);
+		simulation.run();
+		return simulation.getTotalScore();
+	}
+}